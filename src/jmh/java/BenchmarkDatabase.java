@@ -0,0 +1,91 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory H2 database in MySQL mode with the repositories on top,
+ * seeded with generated books.
+ * <p>
+ * JMH does not accept benchmarks in the default package, and the default package
+ * cannot be imported, so the benchmarks in {@code benchmarks} create this class by
+ * reflection and call the repositories through {@link #operations()}.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private static final int AUTHORS_PER_BOOK_DIVISOR = 10;
+
+    public final ConnectionPool pool;
+    public final JdbcAuthorRepository authorRepository;
+    public final JDBCBookRepository bookRepository;
+    public final BookDataGenerator generator = new BookDataGenerator(42);
+
+    public final int bookCount;
+    public final int authorCount;
+
+    /**
+     * @param bookCount          How many books to generate, with a tenth as many authors.
+     * @param statementCacheSize The prepared statement cache size of the pool, 0 to disable it.
+     */
+    public BenchmarkDatabase(int bookCount, int statementCacheSize) {
+        String url = "jdbc:h2:mem:bench" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        this.pool = new ConnectionPool(url, "sa", "", 8, 600000, 30000, 5, 0, statementCacheSize);
+        this.authorRepository = new JdbcAuthorRepository(pool);
+        this.bookRepository = new JDBCBookRepository(pool, authorRepository);
+        authorRepository.setFetchSize(1000);
+        bookRepository.setFetchSize(1000);
+        bookRepository.initialize();
+
+        this.bookCount = bookCount;
+        this.authorCount = Math.max(1, bookCount / AUTHORS_PER_BOOK_DIVISOR);
+        List<Author> authors = generator.authors(authorCount);
+        bookRepository.saveAll(generator.books(bookCount, authors));
+    }
+
+    /**
+     * @return the measured repository calls by name, each with random arguments.
+     */
+    public Map<String, Supplier<Object>> operations() {
+        Book updatedBook = bookRepository.getById(randomBookId()).get();
+        Map<String, Supplier<Object>> operations = new LinkedHashMap<>();
+        operations.put("bookGetAll", bookRepository::getAll);
+        operations.put("bookGetById", () -> bookRepository.getById(randomBookId()));
+        operations.put("bookSaveInsert", () -> {
+            Book book = generator.book(updatedBook.author);
+            bookRepository.save(book);
+            return book;
+        });
+        operations.put("bookSaveUpdate", () -> {
+            updatedBook.pagesCount++;
+            bookRepository.save(updatedBook);
+            return updatedBook;
+        });
+        operations.put("bookGetBookBetweenYear", () -> {
+            int from = 1800 + generator.nextInt(200);
+            return bookRepository.getBookBetweenYear(from, from + 5);
+        });
+        operations.put("bookSearchBookByAuthorName",
+                () -> bookRepository.searchBookByAuthorName("Tolstoy " + generator.nextInt(100)));
+        operations.put("authorGetById", () -> authorRepository.getById(1 + generator.nextInt(authorCount)));
+        return operations;
+    }
+
+    /**
+     * @return the ID of a random seeded book.
+     */
+    public int randomBookId() {
+        return 1 + generator.nextInt(bookCount);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } finally {
+            pool.close();
+        }
+    }
+}
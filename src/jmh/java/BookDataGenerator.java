@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates books and authors which look like a real catalogue:
+ * most authors have a few books and a few authors have many.
+ */
+public class BookDataGenerator {
+    private static final String[] FIRST_NAMES = {
+            "Leo", "Fyodor", "Anton", "Alexander", "Mikhail", "Ivan", "Anna", "Marina", "Nikolai", "Vladimir",
+            "Jane", "Charles", "Virginia", "Ernest", "George", "Agatha", "Mark", "Herman", "Franz", "Gabriel"};
+    private static final String[] LAST_NAMES = {
+            "Tolstoy", "Dostoevsky", "Chekhov", "Pushkin", "Bulgakov", "Turgenev", "Akhmatova", "Tsvetaeva",
+            "Gogol", "Nabokov", "Austen", "Dickens", "Woolf", "Hemingway", "Orwell", "Christie", "Twain",
+            "Melville", "Kafka", "Marquez"};
+    private static final String[] TITLE_WORDS = {
+            "War", "Peace", "Crime", "Punishment", "Garden", "Master", "Night", "House", "Dead", "Souls",
+            "Fathers", "Sons", "Island", "Sea", "Old", "Man", "Years", "Solitude", "Trial", "Castle",
+            "Pride", "Prejudice", "Great", "Expectations", "Lighthouse", "Farm", "Murder", "Express"};
+
+    private final Random random;
+
+    public BookDataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public List<Author> authors(int count) {
+        List<Author> authors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            authors.add(author());
+        }
+        return authors;
+    }
+
+    public Author author() {
+        Author author = new Author();
+        author.name = pick(FIRST_NAMES) + " " + pick(LAST_NAMES) + " " + random.nextInt(1000);
+        author.birthYear = 1750 + random.nextInt(250);
+        return author;
+    }
+
+    /**
+     * Generates books of the given authors, picking low-numbered authors more often.
+     */
+    public List<Book> books(int count, List<Author> authors) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (authors.size() * Math.pow(random.nextDouble(), 2));
+            books.add(book(authors.get(index)));
+        }
+        return books;
+    }
+
+    public Book book(Author author) {
+        Book book = new Book();
+        int words = 1 + random.nextInt(3);
+        StringBuilder title = new StringBuilder(pick(TITLE_WORDS));
+        for (int i = 1; i < words; i++) {
+            title.append(' ').append(pick(TITLE_WORDS));
+        }
+        book.title = title.toString();
+        book.publishYear = Math.max(author.birthYear + 18 + random.nextInt(60), 1800);
+        book.pagesCount = 50 + random.nextInt(1200);
+        book.author = author;
+        return book;
+    }
+
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
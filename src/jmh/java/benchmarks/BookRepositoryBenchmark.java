@@ -0,0 +1,81 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the main operations of the book repository at several table sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookRepositoryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tableSize;
+
+    private RepositoryFixture fixture;
+    private Supplier<Object> getAll;
+    private Supplier<Object> getById;
+    private Supplier<Object> saveInsert;
+    private Supplier<Object> saveUpdate;
+    private Supplier<Object> getBookBetweenYear;
+    private Supplier<Object> searchBookByAuthorName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        fixture = new RepositoryFixture(tableSize, 64);
+        getAll = fixture.operation("bookGetAll");
+        getById = fixture.operation("bookGetById");
+        saveInsert = fixture.operation("bookSaveInsert");
+        saveUpdate = fixture.operation("bookSaveUpdate");
+        getBookBetweenYear = fixture.operation("bookGetBookBetweenYear");
+        searchBookByAuthorName = fixture.operation("bookSearchBookByAuthorName");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Object getAll() {
+        return getAll.get();
+    }
+
+    @Benchmark
+    public Object getById() {
+        return getById.get();
+    }
+
+    @Benchmark
+    public Object saveInsert() {
+        return saveInsert.get();
+    }
+
+    @Benchmark
+    public Object saveUpdate() {
+        return saveUpdate.get();
+    }
+
+    @Benchmark
+    public Object getBookBetweenYear() {
+        return getBookBetweenYear.get();
+    }
+
+    @Benchmark
+    public Object searchBookByAuthorName() {
+        return searchBookByAuthorName.get();
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Creates a seeded {@code BenchmarkDatabase} and looks up its operations,
+ * see {@code BenchmarkDatabase} for why this goes through reflection.
+ */
+final class RepositoryFixture implements AutoCloseable {
+    private final AutoCloseable database;
+    private final Map<String, Supplier<Object>> operations;
+
+    @SuppressWarnings("unchecked")
+    RepositoryFixture(int bookCount, int statementCacheSize) throws ReflectiveOperationException {
+        Class<?> type = Class.forName("BenchmarkDatabase");
+        this.database = (AutoCloseable) type.getConstructor(int.class, int.class)
+                .newInstance(bookCount, statementCacheSize);
+        this.operations = (Map<String, Supplier<Object>>) type.getMethod("operations").invoke(database);
+    }
+
+    Supplier<Object> operation(String name) {
+        Supplier<Object> operation = operations.get(name);
+        if (operation == null) {
+            throw new IllegalArgumentException("No such operation: " + name);
+        }
+        return operation;
+    }
+
+    @Override
+    public void close() {
+        try {
+            database.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares getById throughput without (size 0) and with the prepared statement cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StatementCacheBenchmark {
+
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    private RepositoryFixture fixture;
+    private Supplier<Object> bookGetById;
+    private Supplier<Object> authorGetById;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        fixture = new RepositoryFixture(10000, statementCacheSize);
+        bookGetById = fixture.operation("bookGetById");
+        authorGetById = fixture.operation("authorGetById");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Object bookGetById() {
+        return bookGetById.get();
+    }
+
+    @Benchmark
+    public Object authorGetById() {
+        return authorGetById.get();
+    }
+}
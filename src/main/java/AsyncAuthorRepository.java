@@ -0,0 +1,82 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Non-blocking access to authors: every call runs on an {@link AsyncExecutor}
+ * and returns a future, so independent lookups can run in parallel.
+ * <p>
+ * Each call runs on its own thread, so calls made this way do not join a
+ * transaction opened by the caller.
+ * <p>
+ * When the executor stays full, a call throws {@link java.util.concurrent.RejectedExecutionException}
+ * or runs on the caller's thread, as its {@link AsyncExecutor.RejectionPolicy} says. A call run on
+ * the caller's thread does join the caller's transaction.
+ * <p>
+ * Streams hold a connection until they are closed, so they are not handed to the caller:
+ * the streaming operations return the elements as a list.
+ */
+public class AsyncAuthorRepository {
+    private final IAuthorRepository repository;
+    private final AsyncExecutor executor;
+
+    public AsyncAuthorRepository(IAuthorRepository repository, AsyncExecutor executor) {
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Collection<Author>> getAll() {
+        return executor.supply(repository::getAll);
+    }
+
+    /**
+     * Passes every author to the action on the executor's thread, without loading all authors at once.
+     */
+    public CompletableFuture<Void> forEach(Consumer<Author> action) {
+        return executor.run(() -> repository.forEach(action));
+    }
+
+    public CompletableFuture<Optional<Author>> getById(int id) {
+        return executor.supply(() -> repository.getById(id));
+    }
+
+    public CompletableFuture<Map<Integer, Author>> getByIds(Collection<Integer> ids) {
+        return executor.supply(() -> repository.getByIds(ids));
+    }
+
+    public CompletableFuture<Page<Author>> getPage(String pageToken, int pageSize) {
+        return executor.supply(() -> repository.getPage(pageToken, pageSize));
+    }
+
+    public CompletableFuture<Void> save(Author author) {
+        return executor.run(() -> repository.save(author));
+    }
+
+    public CompletableFuture<Void> saveAll(Collection<Author> authors) {
+        return executor.run(() -> repository.saveAll(authors));
+    }
+
+    public CompletableFuture<Void> deleteById(int id) {
+        return executor.run(() -> repository.deleteById(id));
+    }
+
+    public CompletableFuture<Void> deleteAllById(Collection<Integer> ids) {
+        return executor.run(() -> repository.deleteAllById(ids));
+    }
+
+    /**
+     * @see IAuthorRepository#changesSince(long)
+     */
+    public CompletableFuture<List<Change<Author>>> getChangesSince(long version) {
+        return executor.supply(() -> {
+            try (Stream<Change<Author>> changes = repository.changesSince(version)) {
+                return changes.collect(Collectors.toList());
+            }
+        });
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Non-blocking access to books: every call runs on an {@link AsyncExecutor}
+ * and returns a future, so independent lookups can run in parallel.
+ * <p>
+ * Each call runs on its own thread, so calls made this way do not join a
+ * transaction opened by the caller.
+ * <p>
+ * When the executor stays full, a call throws {@link java.util.concurrent.RejectedExecutionException}
+ * or runs on the caller's thread, as its {@link AsyncExecutor.RejectionPolicy} says. A call run on
+ * the caller's thread does join the caller's transaction.
+ * <p>
+ * Streams hold a connection until they are closed, so they are not handed to the caller:
+ * the streaming operations either pass each element to an action on the executor's thread
+ * or return the elements as a list.
+ */
+public class AsyncBookRepository {
+    private final IBookRepository repository;
+    private final AsyncExecutor executor;
+
+    public AsyncBookRepository(IBookRepository repository, AsyncExecutor executor) {
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Collection<Book>> getAll() {
+        return executor.supply(repository::getAll);
+    }
+
+    /**
+     * Passes every book to the action on the executor's thread, without loading all books at once.
+     */
+    public CompletableFuture<Void> forEach(Consumer<Book> action) {
+        return executor.run(() -> repository.forEach(action));
+    }
+
+    public CompletableFuture<Optional<Book>> getById(int id) {
+        return executor.supply(() -> repository.getById(id));
+    }
+
+    public CompletableFuture<Map<Integer, Book>> getByIds(Collection<Integer> ids) {
+        return executor.supply(() -> repository.getByIds(ids));
+    }
+
+    public CompletableFuture<Page<Book>> getPage(BookSort sort, String pageToken, int pageSize) {
+        return executor.supply(() -> repository.getPage(sort, pageToken, pageSize));
+    }
+
+    public CompletableFuture<Void> save(Book book) {
+        return executor.run(() -> repository.save(book));
+    }
+
+    public CompletableFuture<Void> saveAll(Collection<Book> books) {
+        return executor.run(() -> repository.saveAll(books));
+    }
+
+    public CompletableFuture<Void> deleteById(int id) {
+        return executor.run(() -> repository.deleteById(id));
+    }
+
+    public CompletableFuture<Void> deleteAllById(Collection<Integer> ids) {
+        return executor.run(() -> repository.deleteAllById(ids));
+    }
+
+    public CompletableFuture<Optional<Collection<Book>>> searchBookByAuthorName(String text) {
+        return executor.supply(() -> repository.searchBookByAuthorName(text));
+    }
+
+    public CompletableFuture<List<Book>> searchBooks(String text, int limit) {
+        return executor.supply(() -> repository.searchBooks(text, limit));
+    }
+
+    public CompletableFuture<Optional<Collection<Book>>> getBookBetweenYear(int year1, int year2) {
+        return executor.supply(() -> repository.getBookBetweenYear(year1, year2));
+    }
+
+    public CompletableFuture<Page<Book>> getPageBetweenYear(int year1, int year2, String pageToken, int pageSize) {
+        return executor.supply(() -> repository.getPageBetweenYear(year1, year2, pageToken, pageSize));
+    }
+
+    /**
+     * Passes the books published from {@code year1} to {@code year2} inclusive to the action
+     * on the executor's thread, ordered by publish year.
+     */
+    public CompletableFuture<Void> forEachBetweenYear(int year1, int year2, Consumer<Book> action) {
+        return executor.run(() -> {
+            try (Stream<Book> books = repository.streamBetweenYear(year1, year2)) {
+                books.forEach(action);
+            }
+        });
+    }
+
+    /**
+     * Passes the books of the author to the action on the executor's thread, ordered by ID.
+     */
+    public CompletableFuture<Void> forEachByAuthorId(int authorId, Consumer<Book> action) {
+        return executor.run(() -> {
+            try (Stream<Book> books = repository.streamByAuthorId(authorId)) {
+                books.forEach(action);
+            }
+        });
+    }
+
+    public CompletableFuture<BookStats> getBookStats() {
+        return executor.supply(repository::getBookStats);
+    }
+
+    public CompletableFuture<List<AuthorBookStats>> getAuthorStats() {
+        return executor.supply(() -> toList(repository.streamAuthorStats()));
+    }
+
+    public CompletableFuture<List<YearBucket>> getPublishYearHistogram(int bucketWidth) {
+        return executor.supply(() -> toList(repository.streamPublishYearHistogram(bucketWidth)));
+    }
+
+    /**
+     * @see IBookRepository#changesSince(long)
+     */
+    public CompletableFuture<List<Change<Book>>> getChangesSince(long version) {
+        return executor.supply(() -> toList(repository.changesSince(version)));
+    }
+
+    private static <T> List<T> toList(Stream<T> stream) {
+        try (Stream<T> elements = stream) {
+            return elements.collect(Collectors.toList());
+        }
+    }
+}
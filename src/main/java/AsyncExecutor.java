@@ -0,0 +1,205 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking repository calls off the caller's thread.
+ * <p>
+ * Tasks run on virtual threads when the JVM has them (JDK 21+), otherwise on a
+ * fixed pool of {@code concurrency} threads. At most {@code concurrency} tasks
+ * run at once, which should match the size of the connection pool, so tasks wait
+ * here rather than inside the pool. At most {@code maxPending} tasks may be
+ * submitted and not yet finished; when that many are, {@link #supply(Supplier)}
+ * waits up to the submit timeout for one to finish. If none does, the task is
+ * handled by the {@link RejectionPolicy}: by default the caller gets a
+ * {@link RejectedExecutionException} at once.
+ */
+public class AsyncExecutor implements AutoCloseable {
+
+    /**
+     * What happens to a task submitted while {@code maxPending} tasks stay unfinished for the submit timeout.
+     */
+    public enum RejectionPolicy {
+        /**
+         * {@link #supply(Supplier)} throws {@link RejectedExecutionException}.
+         */
+        ABORT,
+        /**
+         * The task runs on the caller's thread, which slows the caller down to the pace of the executor.
+         * It then joins a transaction the caller has open.
+         */
+        CALLER_RUNS
+    }
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Semaphore running;
+    private final Semaphore pending;
+    private final long submitTimeoutMillis;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+
+    /**
+     * @param concurrency         How many tasks may run at once.
+     * @param maxPending          How many tasks may be submitted and not finished, at least {@code concurrency}.
+     * @param submitTimeoutMillis How long a submit waits when {@code maxPending} tasks are not finished.
+     */
+    public AsyncExecutor(int concurrency, int maxPending, long submitTimeoutMillis) {
+        if (concurrency <= 0 || maxPending < concurrency) {
+            throw new IllegalArgumentException("Expected 0 < concurrency <= maxPending, got "
+                    + concurrency + " and " + maxPending);
+        }
+        if (submitTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Submit timeout must not be negative: " + submitTimeoutMillis);
+        }
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(concurrency, namedThreads());
+        this.running = new Semaphore(concurrency, true);
+        this.pending = new Semaphore(maxPending, true);
+        this.submitTimeoutMillis = submitTimeoutMillis;
+    }
+
+    /**
+     * Creates an executor running as many tasks at once as the pool has connections,
+     * accepting up to four times as many before submitters have to wait.
+     */
+    public static AsyncExecutor forPool(ConnectionPool pool, long submitTimeoutMillis) {
+        return new AsyncExecutor(pool.getMaxSize(), pool.getMaxSize() * 4, submitTimeoutMillis);
+    }
+
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Runs the work asynchronously.
+     *
+     * @return the future result.
+     * @throws RejectedExecutionException If the work could not be submitted in time and the policy is
+     *                                    {@link RejectionPolicy#ABORT}, or the thread was interrupted.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            if (!pending.tryAcquire(submitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejectedCount.incrementAndGet();
+                if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+                    try {
+                        result.complete(work.get());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                    return result;
+                }
+                throw new RejectedExecutionException(
+                        "Too many pending repository calls, waited " + submitTimeoutMillis + " ms");
+            }
+            pendingCount.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to submit a repository call", e);
+        }
+
+        try {
+            executor.execute(() -> {
+                T value = null;
+                Throwable failure = null;
+                try {
+                    running.acquire();
+                    try {
+                        value = work.get();
+                    } finally {
+                        running.release();
+                    }
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    pendingCount.decrementAndGet();
+                    pending.release();
+                }
+                // completed after the permits are released, so dependent calls can submit at once
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(value);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingCount.decrementAndGet();
+            pending.release();
+            rejectedCount.incrementAndGet();
+            throw e;
+        }
+        return result;
+    }
+
+    public CompletableFuture<Void> run(Runnable work) {
+        return supply(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return the number of tasks submitted and not finished yet.
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * @return the number of tasks not accepted in time, including those the caller ran itself.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the number of callers waiting to submit a task.
+     */
+    public int getBlockedSubmitters() {
+        return pending.getQueueLength();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static ThreadFactory namedThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "repository-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor()}, which exists since JDK 21.
+     *
+     * @return the executor, or {@code null} on older JVMs.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
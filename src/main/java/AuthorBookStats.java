@@ -0,0 +1,19 @@
+/**
+ * Aggregates over the books of one author.
+ */
+public class AuthorBookStats {
+    public final int authorId;
+    public final String authorName;
+    public final BookStats stats;
+
+    public AuthorBookStats(int authorId, String authorName, BookStats stats) {
+        this.authorId = authorId;
+        this.authorName = authorName;
+        this.stats = stats;
+    }
+
+    @Override
+    public String toString() {
+        return authorId + " " + authorName + ": " + stats;
+    }
+}
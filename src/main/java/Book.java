@@ -11,4 +11,15 @@ public class Book {
 
     public Author author;
 
+    /**
+     * The row version the book was last loaded or saved with, 0 if unknown.
+     * A known version is only updated while the row still has it, see {@link OptimisticLockException}.
+     */
+    public long version;
+
+    /**
+     * The column values as last loaded or saved by a repository, {@code null} if unknown.
+     */
+    RowState savedState;
+
 }
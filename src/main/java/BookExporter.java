@@ -0,0 +1,99 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes books with their authors to a CSV or JSON-lines file, in the format
+ * read by {@link BookImporter}.
+ * <p>
+ * The books are streamed from the repository and written as they arrive, so
+ * the memory used does not depend on the number of books. On MySQL the default
+ * fetch size of the repository makes the driver stream the rows instead of
+ * buffering the whole result. The file is written next to the target under
+ * a temporary name and moved in place when complete, so readers never see a
+ * partial export. Files ending with {@code .gz} are compressed.
+ */
+public class BookExporter {
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final IBookRepository bookRepository;
+
+    public BookExporter(IBookRepository bookRepository) {
+        this.bookRepository = bookRepository;
+    }
+
+    /**
+     * @return the number of exported books.
+     */
+    public long exportAll(Path file) {
+        return export(file, bookRepository::stream);
+    }
+
+    /**
+     * Exports the books published from {@code year1} to {@code year2} inclusive.
+     *
+     * @return the number of exported books.
+     */
+    public long exportBetweenYear(Path file, int year1, int year2) {
+        return export(file, () -> bookRepository.streamBetweenYear(year1, year2));
+    }
+
+    /**
+     * @return the number of exported books.
+     */
+    public long exportByAuthorId(Path file, int authorId) {
+        return export(file, () -> bookRepository.streamByAuthorId(authorId));
+    }
+
+    private long export(Path file, Supplier<Stream<Book>> books) {
+        RecordFormat format = RecordFormat.of(file);
+        Path target = file.toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        long count = 0;
+        try {
+            try (Writer out = open(temporary, RecordFormat.isGzip(target));
+                 Stream<Book> stream = books.get()) {
+                if (format == RecordFormat.CSV) {
+                    Csv.format(out, BookRecord.FIELDS.toArray());
+                    out.write('\n');
+                }
+                for (Iterator<Book> iterator = stream.iterator(); iterator.hasNext(); count++) {
+                    Book book = iterator.next();
+                    if (format == RecordFormat.CSV) {
+                        Csv.format(out, BookRecord.fieldsOf(book).values().toArray());
+                    } else {
+                        FlatJson.format(out, BookRecord.fieldsOf(book));
+                    }
+                    out.write('\n');
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException deleteFailure) {
+                e.addSuppressed(deleteFailure);
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        }
+    }
+
+    private static Writer open(Path file, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out, WRITE_BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+    }
+}
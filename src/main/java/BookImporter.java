@@ -0,0 +1,389 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads books with their authors from a CSV or JSON-lines file.
+ * <p>
+ * The file is read sequentially in chunks of {@link #setTransactionSize(int)} records.
+ * The chunks are parsed in parallel, and written in file order, each by
+ * {@link IBookRepository#saveAll} in its own transaction. Authors are
+ * matched by name and birth year against the authors already in the database
+ * and those created earlier in the import, so each is inserted once.
+ * <p>
+ * The number of records written is stored in the {@code import_checkpoints} table
+ * in the transaction of every chunk. If an import fails, importing the same file
+ * again skips the records already written.
+ * <p>
+ * CSV files start with a header naming the fields of {@link BookRecord#FIELDS};
+ * JSON-lines files hold one object with these fields per line. Only
+ * {@code authorName} is required, IDs are ignored. Files ending with {@code .gz}
+ * are decompressed.
+ */
+public class BookImporter {
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final TransactionalDataSource dataSource;
+    private final IBookRepository bookRepository;
+    private final IAuthorRepository authorRepository;
+    private int transactionSize = 5000;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long progressIntervalMillis = 10_000;
+
+    public BookImporter(TransactionalDataSource dataSource, IBookRepository bookRepository,
+                        IAuthorRepository authorRepository) {
+        this.dataSource = dataSource;
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+    }
+
+    /**
+     * Sets how many records are written in one transaction.
+     */
+    public void setTransactionSize(int transactionSize) {
+        if (transactionSize <= 0) {
+            throw new IllegalArgumentException("Transaction size must be positive: " + transactionSize);
+        }
+        this.transactionSize = transactionSize;
+    }
+
+    /**
+     * Sets how many threads parse the records.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets how often the progress is printed, 0 prints it only at the end.
+     */
+    public void setProgressInterval(long progressIntervalMillis) {
+        this.progressIntervalMillis = progressIntervalMillis;
+    }
+
+    public Result importFile(Path file) {
+        return importFile(file, RecordFormat.of(file));
+    }
+
+    /**
+     * Imports the file, continuing after the records written by a previous failed import.
+     *
+     * @throws IllegalArgumentException If a record is malformed, the records before
+     *                                  its chunk stay imported.
+     */
+    public Result importFile(Path file, RecordFormat format) {
+        String source = file.toAbsolutePath().normalize().toString();
+        long started = System.nanoTime();
+        long skipped = loadCheckpoint(source);
+        Map<String, Author> authors = loadAuthors();
+        int knownAuthors = authors.size();
+
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "book-import-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Progress progress = new Progress(started, skipped);
+        try (BufferedReader reader = open(file)) {
+            List<String> header = format == RecordFormat.CSV ? readHeader(reader) : null;
+            Deque<Chunk> pending = new ArrayDeque<>();
+            Chunk chunk = new Chunk(skipped + 1);
+            long recordNumber = 0;
+            String record;
+            while ((record = readRecord(reader, format)) != null) {
+                if (++recordNumber <= skipped) {
+                    continue;
+                }
+                chunk.records.add(record);
+                if (chunk.records.size() == transactionSize) {
+                    chunk.parse(parsers, format, header);
+                    pending.add(chunk);
+                    chunk = new Chunk(recordNumber + 1);
+                    // Parsed chunks wait for the writer, so only a few are kept in memory.
+                    if (pending.size() > parallelism * 2) {
+                        write(source, pending.remove(), authors, progress);
+                    }
+                }
+            }
+            if (!chunk.records.isEmpty()) {
+                chunk.parse(parsers, format, header);
+                pending.add(chunk);
+            }
+            while (!pending.isEmpty()) {
+                write(source, pending.remove(), authors, progress);
+            }
+        } catch (IOException e) {
+            System.out.println("Импорт прерван после " + progress.committed + " записей: " + e.getMessage());
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            System.out.println("Импорт прерван после " + progress.committed
+                    + " записей, повторный запуск продолжит с этого места: " + e.getMessage());
+            throw e;
+        } finally {
+            parsers.shutdownNow();
+        }
+        deleteCheckpoint(source);
+
+        Result result = new Result(progress.committed - skipped, skipped,
+                authors.size() - knownAuthors, System.nanoTime() - started);
+        System.out.println("Импорт завершён: " + result);
+        return result;
+    }
+
+    private void write(String source, Chunk chunk, Map<String, Author> authors, Progress progress) {
+        List<Book> books = chunk.await();
+        for (Book book : books) {
+            book.author = authors.computeIfAbsent(authorKey(book.author), key -> book.author);
+        }
+        long committed = chunk.firstRecord + chunk.records.size() - 1;
+        dataSource.inTransaction(() -> {
+            bookRepository.saveAll(books);
+            saveCheckpoint(source, committed);
+        });
+        progress.committed = committed;
+        progress.printIfDue(progressIntervalMillis);
+    }
+
+    private Map<String, Author> loadAuthors() {
+        Map<String, Author> authors = new HashMap<>();
+        authorRepository.forEach(author -> authors.putIfAbsent(authorKey(author), author));
+        return authors;
+    }
+
+    private static String authorKey(Author author) {
+        return author.birthYear + ":" + author.name;
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        if (RecordFormat.isGzip(file)) {
+            return new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file), READ_BUFFER_SIZE),
+                    StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8),
+                READ_BUFFER_SIZE);
+    }
+
+    private static List<String> readHeader(BufferedReader reader) throws IOException {
+        String header = readRecord(reader, RecordFormat.CSV);
+        if (header == null) {
+            return new ArrayList<>();
+        }
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        return Csv.parse(header);
+    }
+
+    /**
+     * Reads one record: a line, or for CSV several lines if a quoted field contains line breaks.
+     *
+     * @return the record, or {@code null} at the end of the file.
+     */
+    private static String readRecord(BufferedReader reader, RecordFormat format) throws IOException {
+        String line = reader.readLine();
+        if (line == null || format != RecordFormat.CSV || !Csv.isIncomplete(line)) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        while (Csv.isIncomplete(record)) {
+            line = reader.readLine();
+            if (line == null) {
+                throw new IllegalArgumentException("Unterminated quoted field at the end of the file");
+            }
+            record.append('\n').append(line);
+        }
+        return record.toString();
+    }
+
+    /**
+     * Parses one record. Blank records produce no book.
+     */
+    private static Book parse(String record, RecordFormat format, List<String> header) {
+        if (record.trim().isEmpty()) {
+            return null;
+        }
+        Map<String, String> fields;
+        if (format == RecordFormat.CSV) {
+            List<String> values = Csv.parse(record);
+            fields = new LinkedHashMap<>();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                fields.put(header.get(i), values.get(i));
+            }
+        } else {
+            fields = FlatJson.parse(record);
+        }
+        return BookRecord.toBook(fields);
+    }
+
+    private long loadCheckpoint(String source) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT records FROM import_checkpoints WHERE source = ?")) {
+            statement.setString(1, source);
+            try (ResultSet cursor = statement.executeQuery()) {
+                return cursor.next() ? cursor.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void saveCheckpoint(String source, long records) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement update = connection.prepareStatement(
+                     "UPDATE import_checkpoints SET records = ?, updated_at = CURRENT_TIMESTAMP WHERE source = ?")) {
+            update.setLong(1, records);
+            update.setString(2, source);
+            if (update.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO import_checkpoints(source, records, updated_at)" +
+                                " VALUES(?, ?, CURRENT_TIMESTAMP)")) {
+                    insert.setString(1, source);
+                    insert.setLong(2, records);
+                    insert.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void deleteCheckpoint(String source) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "DELETE FROM import_checkpoints WHERE source = ?")) {
+            statement.setString(1, source);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Consecutive records of the file, written in one transaction.
+     */
+    private static class Chunk {
+        /**
+         * The number of the first record in the file, counting from 1 after the CSV header.
+         */
+        final long firstRecord;
+        final List<String> records = new ArrayList<>();
+        private Future<List<Book>> books;
+
+        Chunk(long firstRecord) {
+            this.firstRecord = firstRecord;
+        }
+
+        void parse(ExecutorService parsers, RecordFormat format, List<String> header) {
+            books = parsers.submit(() -> {
+                List<Book> parsed = new ArrayList<>(records.size());
+                for (int i = 0; i < records.size(); i++) {
+                    try {
+                        Book book = BookImporter.parse(records.get(i), format, header);
+                        if (book != null) {
+                            parsed.add(book);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Record " + (firstRecord + i) + ": " + e.getMessage(), e);
+                    }
+                }
+                return parsed;
+            });
+        }
+
+        List<Book> await() {
+            try {
+                return books.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+        }
+    }
+
+    private static class Progress {
+        final long started;
+        final long skipped;
+        long committed;
+        long lastPrinted;
+
+        Progress(long started, long skipped) {
+            this.started = started;
+            this.skipped = skipped;
+            this.committed = skipped;
+            this.lastPrinted = started;
+        }
+
+        void printIfDue(long intervalMillis) {
+            long now = System.nanoTime();
+            if (intervalMillis > 0 && now - lastPrinted >= TimeUnit.MILLISECONDS.toNanos(intervalMillis)) {
+                lastPrinted = now;
+                System.out.printf("Импортировано %d записей, %.0f записей/с%n",
+                        committed, (committed - skipped) * 1e9 / Math.max(1, now - started));
+            }
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static class Result {
+        /**
+         * The records written by this import, including blank ones.
+         */
+        public final long records;
+
+        /**
+         * The records skipped because a previous import had written them.
+         */
+        public final long skippedRecords;
+
+        public final int createdAuthors;
+        public final long elapsedNanos;
+
+        Result(long records, long skippedRecords, int createdAuthors, long elapsedNanos) {
+            this.records = records;
+            this.skippedRecords = skippedRecords;
+            this.createdAuthors = createdAuthors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getRecordsPerSecond() {
+            return records * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("записей: %d, пропущено: %d, новых авторов: %d, время: %.1f с, %.0f записей/с",
+                    records, skippedRecords, createdAuthors, elapsedNanos / 1e9, getRecordsPerSecond());
+        }
+    }
+}
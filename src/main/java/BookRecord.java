@@ -0,0 +1,67 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A book with its author as one flat record of named fields,
+ * the row format of imported and exported files.
+ */
+final class BookRecord {
+    static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "id", "title", "pagesCount", "publishYear", "authorId", "authorName", "authorBirthYear"));
+
+    private BookRecord() {
+    }
+
+    /**
+     * @return the fields of the book in the order of {@link #FIELDS}.
+     */
+    static Map<String, Object> fieldsOf(Book book) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", book.id);
+        fields.put("title", book.title);
+        fields.put("pagesCount", book.pagesCount);
+        fields.put("publishYear", book.publishYear);
+        fields.put("authorId", book.author != null ? book.author.id : null);
+        fields.put("authorName", book.author != null ? book.author.name : null);
+        fields.put("authorBirthYear", book.author != null ? book.author.birthYear : null);
+        return fields;
+    }
+
+    /**
+     * Creates a new book and a new author from the fields. IDs are ignored,
+     * so the records can be loaded into another database.
+     *
+     * @throws IllegalArgumentException If the author name is missing or a number is malformed.
+     */
+    static Book toBook(Map<String, String> fields) {
+        String authorName = fields.get("authorName");
+        if (authorName == null || authorName.isEmpty()) {
+            throw new IllegalArgumentException("The author name is missing");
+        }
+        Author author = new Author();
+        author.name = authorName;
+        author.birthYear = toInt(fields, "authorBirthYear");
+
+        Book book = new Book();
+        book.title = fields.get("title");
+        book.pagesCount = toInt(fields, "pagesCount");
+        book.publishYear = toInt(fields, "publishYear");
+        book.author = author;
+        return book;
+    }
+
+    private static int toInt(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The field " + name + " is not a number: " + value);
+        }
+    }
+}
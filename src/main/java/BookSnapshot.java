@@ -0,0 +1,577 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A compact in-memory copy of the books and authors tables, shared by
+ * {@link SnapshotBookRepository} and {@link SnapshotAuthorRepository}.
+ * <p>
+ * Every table is stored by column: one {@code int} array per column, with the
+ * rows sorted by ID, so a row is found by binary search. Titles and names are
+ * codes of a shared {@link StringPool}, and the {@code long} row version is split
+ * into two {@code int} columns. A book takes seven {@code int}s instead of a
+ * {@link Book}, an {@link Author} and their strings, and objects are created
+ * only for the rows a call returns. The pool is rebuilt from the stored rows on
+ * every load, and when it holds many more strings than there are rows.
+ * <p>
+ * The books are also indexed by publish year: an array of their rows sorted by
+ * year and ID, rebuilt on the first range query after a change.
+ * <p>
+ * Reads share a read lock and run in parallel, changes take the write lock.
+ * A refresh reads the changes from the database before taking the write lock,
+ * so reads wait only while the changes are applied.
+ */
+public class BookSnapshot {
+    private static final int BOOK_TITLE = 1;
+    private static final int BOOK_PAGES = 2;
+    private static final int BOOK_YEAR = 3;
+    private static final int BOOK_AUTHOR = 4;
+    private static final int BOOK_VERSION = 5;
+
+    private static final int AUTHOR_NAME = 1;
+    private static final int AUTHOR_BIRTH_YEAR = 2;
+    private static final int AUTHOR_VERSION = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Held by loads and refreshes, so they read and apply the changes one at a time.
+     */
+    private final Object refreshLock = new Object();
+
+    private StringPool strings = new StringPool();
+    private final Table books = new Table(7);
+    private final Table authors = new Table(5);
+
+    /**
+     * Rows of the books sorted by publish year and ID, {@code null} if out of date.
+     */
+    private int[] rowsByYear;
+
+    /**
+     * The highest versions read from the repositories, the next refresh reads the changes after them.
+     */
+    private long bookVersion;
+    private long authorVersion;
+
+    /**
+     * Replaces the books by all books of the repository, together with their authors.
+     * Reads wait until all books are loaded.
+     */
+    public void loadBooks(IBookRepository source) {
+        synchronized (refreshLock) {
+            write(() -> {
+                books.clear();
+                rowsByYear = null;
+                long version = 0;
+                try (Stream<Change<Book>> changes = source.changesSince(0)) {
+                    for (Change<Book> change : (Iterable<Change<Book>>) changes::iterator) {
+                        applyBookChange(change);
+                        version = Math.max(version, change.version);
+                    }
+                }
+                bookVersion = version;
+                compactStrings();
+            });
+        }
+    }
+
+    /**
+     * Applies the books written and deleted since the last load or refresh.
+     */
+    public void refreshBooks(IBookRepository source) {
+        synchronized (refreshLock) {
+            List<Change<Book>> changes;
+            try (Stream<Change<Book>> stream = source.changesSince(getBookVersion())) {
+                changes = stream.collect(Collectors.toList());
+            }
+            write(() -> {
+                for (Change<Book> change : changes) {
+                    applyBookChange(change);
+                    bookVersion = Math.max(bookVersion, change.version);
+                }
+                compactStringsIfSparse();
+            });
+        }
+    }
+
+    /**
+     * Replaces the authors by all authors of the repository.
+     */
+    public void loadAuthors(IAuthorRepository source) {
+        synchronized (refreshLock) {
+            write(() -> {
+                authors.clear();
+                long version = 0;
+                try (Stream<Change<Author>> changes = source.changesSince(0)) {
+                    for (Change<Author> change : (Iterable<Change<Author>>) changes::iterator) {
+                        applyAuthorChange(change);
+                        version = Math.max(version, change.version);
+                    }
+                }
+                authorVersion = version;
+                compactStrings();
+            });
+        }
+    }
+
+    /**
+     * Applies the authors written and deleted since the last load or refresh.
+     */
+    public void refreshAuthors(IAuthorRepository source) {
+        synchronized (refreshLock) {
+            List<Change<Author>> changes;
+            try (Stream<Change<Author>> stream = source.changesSince(getAuthorVersion())) {
+                changes = stream.collect(Collectors.toList());
+            }
+            write(() -> {
+                for (Change<Author> change : changes) {
+                    applyAuthorChange(change);
+                    authorVersion = Math.max(authorVersion, change.version);
+                }
+                compactStringsIfSparse();
+            });
+        }
+    }
+
+    /**
+     * Applies a change of a book, for example one received from a {@link ChangePoller}.
+     */
+    public void applyBookChange(Change<Book> change) {
+        if (change.isDeleted()) {
+            removeBook(change.id);
+        } else {
+            putBook(change.value);
+        }
+    }
+
+    public void applyAuthorChange(Change<Author> change) {
+        write(() -> {
+            if (change.isDeleted()) {
+                authors.remove(change.id);
+            } else {
+                putAuthor(change.value);
+            }
+        });
+    }
+
+    /**
+     * @return the version of the books the snapshot is up to date with.
+     */
+    public long getBookVersion() {
+        return read(() -> bookVersion);
+    }
+
+    public long getAuthorVersion() {
+        return read(() -> authorVersion);
+    }
+
+    /**
+     * Stores the saved book and its author.
+     */
+    public void putBook(Book book) {
+        write(() -> {
+            if (book.author != null) {
+                putAuthor(book.author);
+            }
+            books.put(book.id, strings.encode(book.title), book.pagesCount, book.publishYear,
+                    book.author != null ? book.author.id : Author.INVALID_ID,
+                    (int) (book.version >>> 32), (int) book.version);
+            rowsByYear = null;
+        });
+    }
+
+    public void putAuthor(Author author) {
+        write(() -> authors.put(author.id, strings.encode(author.name), author.birthYear,
+                (int) (author.version >>> 32), (int) author.version));
+    }
+
+    public void removeBook(int id) {
+        write(() -> {
+            if (books.remove(id)) {
+                rowsByYear = null;
+            }
+        });
+    }
+
+    /**
+     * Removes the author unless a book still refers to it, as the database refuses to delete it then.
+     */
+    public void removeAuthor(int id) {
+        write(() -> {
+            int[] bookAuthors = books.columns[BOOK_AUTHOR];
+            for (int row = 0; row < books.size; row++) {
+                if (bookAuthors[row] == id) {
+                    return;
+                }
+            }
+            authors.remove(id);
+        });
+    }
+
+    public void clearBooks() {
+        write(() -> {
+            books.clear();
+            rowsByYear = null;
+        });
+    }
+
+    public void clearAuthors() {
+        write(authors::clear);
+    }
+
+    public Optional<Book> getBook(int id) {
+        return read(() -> {
+            int row = books.find(id);
+            return row < 0 ? Optional.empty() : Optional.of(bookAt(row, new HashMap<>()));
+        });
+    }
+
+    public Map<Integer, Book> getBooks(Collection<Integer> ids) {
+        return read(() -> {
+            Map<Integer, Book> found = new HashMap<>();
+            Map<Integer, Author> loadedAuthors = new HashMap<>();
+            for (Integer id : ids) {
+                int row = books.find(id);
+                if (row >= 0) {
+                    found.put(id, bookAt(row, loadedAuthors));
+                }
+            }
+            return found;
+        });
+    }
+
+    /**
+     * @return all books ordered by ID.
+     */
+    public List<Book> getAllBooks() {
+        return read(() -> {
+            List<Book> found = new ArrayList<>(books.size);
+            Map<Integer, Author> loadedAuthors = new HashMap<>();
+            for (int row = 0; row < books.size; row++) {
+                found.add(bookAt(row, loadedAuthors));
+            }
+            return found;
+        });
+    }
+
+    /**
+     * @return the books published from {@code year1} to {@code year2} inclusive, ordered by year and ID.
+     */
+    public List<Book> getBooksBetweenYear(int year1, int year2) {
+        lock.readLock().lock();
+        try {
+            if (rowsByYear == null) {
+                // the index is built under the write lock, then the read lock is taken back before it is released
+                lock.readLock().unlock();
+                lock.writeLock().lock();
+                try {
+                    yearIndex();
+                    lock.readLock().lock();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            int[] index = rowsByYear;
+            int[] years = books.columns[BOOK_YEAR];
+            int low = 0;
+            int high = index.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (years[index[middle]] < year1) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            List<Book> found = new ArrayList<>();
+            Map<Integer, Author> loadedAuthors = new HashMap<>();
+            for (int i = low; i < index.length && years[index[i]] <= year2; i++) {
+                found.add(bookAt(index[i], loadedAuthors));
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the books of the author ordered by ID.
+     */
+    public List<Book> getBooksByAuthorId(int authorId) {
+        return read(() -> {
+            List<Book> found = new ArrayList<>();
+            Map<Integer, Author> loadedAuthors = new HashMap<>();
+            int[] bookAuthors = books.columns[BOOK_AUTHOR];
+            for (int row = 0; row < books.size; row++) {
+                if (bookAuthors[row] == authorId) {
+                    found.add(bookAt(row, loadedAuthors));
+                }
+            }
+            return found;
+        });
+    }
+
+    /**
+     * @return the books whose author name contains the text ignoring case, ordered by ID.
+     */
+    public List<Book> getBooksByAuthorName(String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        return read(() -> {
+            BitSet checkedNames = new BitSet();
+            BitSet matchingNames = new BitSet();
+            Set<Integer> authorIds = new HashSet<>();
+            int[] names = authors.columns[AUTHOR_NAME];
+            for (int row = 0; row < authors.size; row++) {
+                int name = names[row];
+                if (name == StringPool.NULL) {
+                    continue;
+                }
+                if (!checkedNames.get(name)) {
+                    checkedNames.set(name);
+                    if (strings.decode(name).toLowerCase(Locale.ROOT).contains(needle)) {
+                        matchingNames.set(name);
+                    }
+                }
+                if (matchingNames.get(name)) {
+                    authorIds.add(authors.columns[0][row]);
+                }
+            }
+
+            List<Book> found = new ArrayList<>();
+            Map<Integer, Author> loadedAuthors = new HashMap<>();
+            int[] bookAuthors = books.columns[BOOK_AUTHOR];
+            for (int row = 0; row < books.size && !authorIds.isEmpty(); row++) {
+                if (authorIds.contains(bookAuthors[row])) {
+                    found.add(bookAt(row, loadedAuthors));
+                }
+            }
+            return found;
+        });
+    }
+
+    public Optional<Author> getAuthor(int id) {
+        return read(() -> {
+            int row = authors.find(id);
+            return row < 0 ? Optional.empty() : Optional.of(authorAt(row));
+        });
+    }
+
+    public Map<Integer, Author> getAuthors(Collection<Integer> ids) {
+        return read(() -> {
+            Map<Integer, Author> found = new HashMap<>();
+            for (Integer id : ids) {
+                int row = authors.find(id);
+                if (row >= 0) {
+                    found.put(id, authorAt(row));
+                }
+            }
+            return found;
+        });
+    }
+
+    /**
+     * @return all authors ordered by ID.
+     */
+    public List<Author> getAllAuthors() {
+        return read(() -> {
+            List<Author> found = new ArrayList<>(authors.size);
+            for (int row = 0; row < authors.size; row++) {
+                found.add(authorAt(row));
+            }
+            return found;
+        });
+    }
+
+    public int getBookCount() {
+        return read(() -> books.size);
+    }
+
+    public int getAuthorCount() {
+        return read(() -> authors.size);
+    }
+
+    @Override
+    public String toString() {
+        return read(() -> "книг " + books.size + ", авторов " + authors.size + ", различных строк " + strings.size());
+    }
+
+    private <T> T read(Supplier<T> work) {
+        lock.readLock().lock();
+        try {
+            return work.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Runnable work) {
+        lock.writeLock().lock();
+        try {
+            work.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the pool if most of its strings are no longer used by a row.
+     */
+    private void compactStringsIfSparse() {
+        if (strings.size() > 1024 && strings.size() > 2 * (books.size + authors.size)) {
+            compactStrings();
+        }
+    }
+
+    /**
+     * Replaces the pool by one holding only the titles and names of the stored rows.
+     */
+    private void compactStrings() {
+        StringPool compacted = new StringPool();
+        recode(books, BOOK_TITLE, compacted);
+        recode(authors, AUTHOR_NAME, compacted);
+        strings = compacted;
+    }
+
+    private void recode(Table table, int column, StringPool compacted) {
+        int[] codes = table.columns[column];
+        for (int row = 0; row < table.size; row++) {
+            codes[row] = compacted.encode(strings.decode(codes[row]));
+        }
+    }
+
+    private int[] yearIndex() {
+        if (rowsByYear == null) {
+            int[] years = books.columns[BOOK_YEAR];
+            long[] keys = new long[books.size];
+            for (int row = 0; row < books.size; row++) {
+                // rows are in ID order, so sorting by year then row sorts by year then ID
+                keys[row] = ((long) years[row] << 32) | row;
+            }
+            Arrays.sort(keys);
+            rowsByYear = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                rowsByYear[i] = (int) keys[i];
+            }
+        }
+        return rowsByYear;
+    }
+
+    /**
+     * Creates the book at the row. Books of the same author share one author object.
+     */
+    private Book bookAt(int row, Map<Integer, Author> loadedAuthors) {
+        Book book = new Book();
+        book.id = books.columns[0][row];
+        book.title = strings.decode(books.columns[BOOK_TITLE][row]);
+        book.pagesCount = books.columns[BOOK_PAGES][row];
+        book.publishYear = books.columns[BOOK_YEAR][row];
+        book.version = books.versionAt(BOOK_VERSION, row);
+        int authorId = books.columns[BOOK_AUTHOR][row];
+        if (authorId != Author.INVALID_ID) {
+            book.author = loadedAuthors.computeIfAbsent(authorId, id -> {
+                int authorRow = authors.find(id);
+                if (authorRow >= 0) {
+                    return authorAt(authorRow);
+                }
+                Author author = new Author();
+                author.id = id;
+                return author;
+            });
+        }
+        book.savedState = JDBCBookRepository.stateOf(book);
+        return book;
+    }
+
+    private Author authorAt(int row) {
+        Author author = new Author();
+        author.id = authors.columns[0][row];
+        author.name = strings.decode(authors.columns[AUTHOR_NAME][row]);
+        author.birthYear = authors.columns[AUTHOR_BIRTH_YEAR][row];
+        author.version = authors.versionAt(AUTHOR_VERSION, row);
+        author.savedState = JdbcAuthorRepository.stateOf(author);
+        return author;
+    }
+
+    /**
+     * Rows of {@code int} columns sorted by the ID in column 0.
+     */
+    private static final class Table {
+        final int[][] columns;
+        int size;
+
+        Table(int columnCount) {
+            columns = new int[columnCount][16];
+        }
+
+        /**
+         * @return the row of the ID, or -1 if it is absent.
+         */
+        int find(int id) {
+            int row = Arrays.binarySearch(columns[0], 0, size, id);
+            return row >= 0 ? row : -1;
+        }
+
+        /**
+         * Inserts or replaces the row with the ID. New IDs are usually the highest and are appended.
+         */
+        void put(int id, int... values) {
+            int row = size > 0 && id > columns[0][size - 1] ? size : Arrays.binarySearch(columns[0], 0, size, id);
+            if (row < 0 || row == size) {
+                row = row < 0 ? -row - 1 : row;
+                if (size == columns[0].length) {
+                    for (int column = 0; column < columns.length; column++) {
+                        columns[column] = Arrays.copyOf(columns[column], size * 2);
+                    }
+                }
+                for (int[] column : columns) {
+                    System.arraycopy(column, row, column, row + 1, size - row);
+                }
+                size++;
+            }
+            columns[0][row] = id;
+            for (int column = 1; column < columns.length; column++) {
+                columns[column][row] = values[column - 1];
+            }
+        }
+
+        /**
+         * @return the {@code long} stored in the column and the next one, high bits first.
+         */
+        long versionAt(int column, int row) {
+            return (long) columns[column][row] << 32 | columns[column + 1][row] & 0xFFFFFFFFL;
+        }
+
+        boolean remove(int id) {
+            int row = find(id);
+            if (row < 0) {
+                return false;
+            }
+            for (int[] column : columns) {
+                System.arraycopy(column, row + 1, column, row, size - row - 1);
+            }
+            size--;
+            return true;
+        }
+
+        void clear() {
+            size = 0;
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = new int[16];
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * The orders in which books can be listed page by page.
+ * Every order ends with the book ID, so it is unique and stable between pages.
+ */
+public enum BookSort {
+    ID(null),
+    PUBLISH_YEAR("publish_year"),
+    TITLE("title");
+
+    /**
+     * The column sorted on before the book ID, or {@code null} if books are sorted by ID only.
+     */
+    final String column;
+
+    BookSort(String column) {
+        this.column = column;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Aggregates over a group of books, computed by the database.
+ */
+public class BookStats {
+    public final long bookCount;
+    public final long totalPages;
+    public final int minPages;
+    public final int maxPages;
+
+    public BookStats(long bookCount, long totalPages, int minPages, int maxPages) {
+        this.bookCount = bookCount;
+        this.totalPages = totalPages;
+        this.minPages = minPages;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * @return the average number of pages, 0 for an empty group.
+     */
+    public double getAveragePages() {
+        return bookCount == 0 ? 0 : (double) totalPages / bookCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("книг: %d, страниц: %d, мин: %d, макс: %d, в среднем: %.1f",
+                bookCount, totalPages, minPages, maxPages, getAveragePages());
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-through cache of authors by ID in front of another repository.
+ * <p>
+ * The cache holds at most {@code maxSize} authors and evicts the least
+ * recently used one when full. An entry expires {@code ttlMillis} after it was
+ * loaded. Saving or deleting an author through this repository invalidates
+ * its entry, so the next read loads the committed state. Inside a transaction the
+ * entry is invalidated again once the transaction commits, and authors loaded
+ * inside a transaction are not cached, as they may hold uncommitted changes.
+ * <p>
+ * Callers get copies of the cached authors, so changing a returned author
+ * does not change the cache.
+ */
+public class CachingAuthorRepository extends ForwardingAuthorRepository {
+    private final TransactionalDataSource dataSource;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<Integer, CachedAuthor> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Incremented by every invalidation. A load which overlapped an invalidation
+     * is not cached, as it may have read the state before the write.
+     */
+    private long invalidations;
+
+    /**
+     * @param dataSource The source the delegate writes through, to invalidate on commit.
+     * @param maxSize    The maximum number of cached authors.
+     * @param ttlMillis  How long a loaded author stays valid.
+     */
+    public CachingAuthorRepository(IAuthorRepository delegate, TransactionalDataSource dataSource,
+                                   int maxSize, long ttlMillis) {
+        super(delegate);
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<Integer, CachedAuthor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedAuthor> eldest) {
+                if (size() > CachingAuthorRepository.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Optional<Author> getById(int id) {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            CachedAuthor entry = entries.get(id);
+            if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return Optional.of(copyOf(entry.author));
+            }
+            if (entry != null) {
+                entries.remove(id);
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+
+        misses.incrementAndGet();
+        Optional<Author> author = delegate.getById(id);
+        if (author.isPresent() && !dataSource.isInTransaction()) {
+            synchronized (this) {
+                if (invalidations == invalidationsBeforeLoad) {
+                    entries.put(id, new CachedAuthor(copyOf(author.get()), System.currentTimeMillis() + ttlMillis));
+                }
+            }
+        }
+        return author;
+    }
+
+    /**
+     * Returns the cached authors and loads the others in one batch.
+     */
+    @Override
+    public Map<Integer, Author> getByIds(Collection<Integer> ids) {
+        Map<Integer, Author> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Integer id : ids) {
+                CachedAuthor entry = entries.get(id);
+                if (entry != null && entry.expiresAtMillis > now) {
+                    found.put(id, copyOf(entry.author));
+                } else {
+                    missing.add(id);
+                }
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+        hits.addAndGet(found.size());
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        misses.addAndGet(missing.size());
+        Map<Integer, Author> loaded = delegate.getByIds(missing);
+        synchronized (this) {
+            if (invalidations == invalidationsBeforeLoad && !dataSource.isInTransaction()) {
+                long expiresAtMillis = System.currentTimeMillis() + ttlMillis;
+                loaded.forEach((id, author) -> entries.put(id, new CachedAuthor(copyOf(author), expiresAtMillis)));
+            }
+        }
+        found.putAll(loaded);
+        return found;
+    }
+
+    @Override
+    public void save(Author author) {
+        try {
+            delegate.save(author);
+        } finally {
+            invalidateOnCommit(() -> invalidate(author.id));
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Author> authors) {
+        try {
+            delegate.saveAll(authors);
+        } finally {
+            List<Integer> ids = new ArrayList<>();
+            for (Author author : authors) {
+                if (author != null) {
+                    ids.add(author.id);
+                }
+            }
+            invalidateOnCommit(() -> ids.forEach(this::invalidate));
+        }
+    }
+
+    @Override
+    public void deleteById(int id) {
+        try {
+            delegate.deleteById(id);
+        } finally {
+            invalidateOnCommit(() -> invalidate(id));
+        }
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        try {
+            delegate.deleteAllById(ids);
+        } finally {
+            invalidateOnCommit(() -> ids.forEach(this::invalidate));
+        }
+    }
+
+    @Override
+    public void deleteAuthorsTable() {
+        try {
+            delegate.deleteAuthorsTable();
+        } finally {
+            invalidateOnCommit(this::invalidateAll);
+        }
+    }
+
+    /**
+     * Invalidates now, and again after the commit if the write is part of a transaction:
+     * until then other threads still read and may cache the state before the write.
+     */
+    private void invalidateOnCommit(Runnable invalidation) {
+        invalidation.run();
+        if (dataSource.isInTransaction()) {
+            dataSource.afterCommit(invalidation);
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        invalidations++;
+        entries.remove(id);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of authors removed to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHitCount();
+        long requests = hitCount + getMissCount();
+        return String.format("size=%d, max=%d, hits=%d, misses=%d, evictions=%d, hitRate=%.1f%%",
+                size(), maxSize, hitCount, getMissCount(), getEvictionCount(),
+                requests == 0 ? 0.0 : 100.0 * hitCount / requests);
+    }
+
+    private static Author copyOf(Author author) {
+        Author copy = new Author();
+        copy.id = author.id;
+        copy.name = author.name;
+        copy.birthYear = author.birthYear;
+        copy.version = author.version;
+        copy.savedState = author.savedState;
+        return copy;
+    }
+
+    private static class CachedAuthor {
+        final Author author;
+        final long expiresAtMillis;
+
+        CachedAuthor(Author author, long expiresAtMillis) {
+            this.author = author;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
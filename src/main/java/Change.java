@@ -0,0 +1,33 @@
+/**
+ * A row written or deleted since a version, as returned by {@code changesSince}.
+ *
+ * @param <T> The type of the row, {@link Book} or {@link Author}.
+ */
+public final class Change<T> {
+    /**
+     * The version of the write. Later writes have higher versions.
+     */
+    public final long version;
+
+    public final int id;
+
+    /**
+     * The row as written, or {@code null} if it was deleted.
+     */
+    public final T value;
+
+    public Change(long version, int id, T value) {
+        this.version = version;
+        this.id = id;
+        this.value = value;
+    }
+
+    public boolean isDeleted() {
+        return value == null;
+    }
+
+    @Override
+    public String toString() {
+        return (isDeleted() ? "удалено " : "изменено ") + id + " в версии " + version;
+    }
+}
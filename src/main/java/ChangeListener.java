@@ -0,0 +1,7 @@
+/**
+ * Receives the changes found by a {@link ChangePoller}, in the order of their versions.
+ */
+@FunctionalInterface
+public interface ChangeListener<T> {
+    void changed(Change<T> change);
+}
@@ -0,0 +1,123 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reads the changes of books and authors since the last poll and passes them
+ * to the registered {@link ChangeListener}s, for example to keep a cache or a
+ * {@link BookSnapshot} up to date.
+ * <p>
+ * The version of a table is advanced only after all its changes were passed on.
+ * If a listener fails, the poll stops and the same changes are passed again by
+ * the next poll, so listeners must accept a change twice.
+ */
+public class ChangePoller implements AutoCloseable {
+    private final IBookRepository bookRepository;
+    private final IAuthorRepository authorRepository;
+    private final List<ChangeListener<Book>> bookListeners = new CopyOnWriteArrayList<>();
+    private final List<ChangeListener<Author>> authorListeners = new CopyOnWriteArrayList<>();
+    private volatile long bookVersion;
+    private volatile long authorVersion;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param bookVersion   The version of the books already known, 0 to receive all books.
+     * @param authorVersion The version of the authors already known, 0 to receive all authors.
+     */
+    public ChangePoller(IBookRepository bookRepository, IAuthorRepository authorRepository,
+                        long bookVersion, long authorVersion) {
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+        this.bookVersion = bookVersion;
+        this.authorVersion = authorVersion;
+    }
+
+    public void addBookListener(ChangeListener<Book> listener) {
+        bookListeners.add(listener);
+    }
+
+    public void addAuthorListener(ChangeListener<Author> listener) {
+        authorListeners.add(listener);
+    }
+
+    /**
+     * Passes the changes made since the last poll to the listeners, authors first.
+     *
+     * @return the number of changes passed on.
+     */
+    public synchronized int poll() {
+        int count = 0;
+        if (!authorListeners.isEmpty()) {
+            try (Stream<Change<Author>> changes = authorRepository.changesSince(authorVersion)) {
+                long version = authorVersion;
+                for (Change<Author> change : (Iterable<Change<Author>>) changes::iterator) {
+                    for (ChangeListener<Author> listener : authorListeners) {
+                        listener.changed(change);
+                    }
+                    version = Math.max(version, change.version);
+                    count++;
+                }
+                authorVersion = version;
+            }
+        }
+        if (!bookListeners.isEmpty()) {
+            try (Stream<Change<Book>> changes = bookRepository.changesSince(bookVersion)) {
+                long version = bookVersion;
+                for (Change<Book> change : (Iterable<Change<Book>>) changes::iterator) {
+                    for (ChangeListener<Book> listener : bookListeners) {
+                        listener.changed(change);
+                    }
+                    version = Math.max(version, change.version);
+                    count++;
+                }
+                bookVersion = version;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Polls on a background thread every {@code periodMillis}, until {@link #close()}.
+     */
+    public synchronized void start(long periodMillis) {
+        if (scheduler != null) {
+            throw new IllegalStateException("The poller is already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                System.err.println("Не удалось получить изменения: " + e.getMessage());
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the version of the books passed on so far.
+     */
+    public long getBookVersion() {
+        return bookVersion;
+    }
+
+    public long getAuthorVersion() {
+        return authorVersion;
+    }
+
+    /**
+     * Stops the background polls, a poll already running is finished.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,445 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of JDBC connections.
+ * <p>
+ * Every borrowed connection must be closed by the caller, which returns it
+ * to the pool instead of closing the physical connection. Idle connections
+ * are validated on borrow and evicted after the idle timeout.
+ * <p>
+ * Settings read by {@link #fromProperties(Properties)}:
+ * <ul>
+ * <li>{@code url}, {@code username}, {@code password} - the database to connect to;</li>
+ * <li>{@code pool.maxSize} - the maximum number of open connections, 10 by default;</li>
+ * <li>{@code pool.idleTimeout} - milliseconds an idle connection is kept, 600000 by default;</li>
+ * <li>{@code pool.acquireTimeout} - milliseconds to wait for a free connection, 30000 by default;</li>
+ * <li>{@code pool.validationTimeout} - seconds to wait for validation on borrow, 5 by default;</li>
+ * <li>{@code pool.leakDetectionThreshold} - milliseconds after which a connection that was not
+ * returned is reported as a leak, 0 (disabled) by default;</li>
+ * <li>{@code pool.statementCacheSize} - prepared statements kept open per connection,
+ * 64 by default, 0 disables the cache.</li>
+ * </ul>
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final long leakDetectionThresholdMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService housekeeper;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong acquireNanosTotal = new AtomicLong();
+    private final AtomicLong acquireNanosMax = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool. No connection is opened until the first borrow.
+     *
+     * @param maxSize                      The maximum number of open connections.
+     * @param idleTimeoutMillis            How long an unused connection is kept open.
+     * @param acquireTimeoutMillis         How long {@link #getConnection()} waits for a free connection.
+     * @param validationTimeoutSeconds     How long to wait for an idle connection to be validated on borrow.
+     * @param leakDetectionThresholdMillis How long a connection may stay borrowed before it is reported,
+     *                                     or 0 to disable leak detection.
+     * @param statementCacheSize           How many prepared statements to keep open per connection,
+     *                                     or 0 to disable statement caching.
+     */
+    public ConnectionPool(String url, String username, String password,
+                          int maxSize, long idleTimeoutMillis, long acquireTimeoutMillis,
+                          int validationTimeoutSeconds, long leakDetectionThresholdMillis,
+                          int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriod = Math.max(1000, idleTimeoutMillis / 2);
+        housekeeper.scheduleWithFixedDelay(this::evictIdleConnections,
+                evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a pool configured by the given properties, see the class description.
+     */
+    public static ConnectionPool fromProperties(Properties properties) {
+        return new ConnectionPool(
+                properties.getProperty("url"),
+                properties.getProperty("username"),
+                properties.getProperty("password"),
+                Integer.parseInt(properties.getProperty("pool.maxSize", "10")),
+                Long.parseLong(properties.getProperty("pool.idleTimeout", "600000")),
+                Long.parseLong(properties.getProperty("pool.acquireTimeout", "30000")),
+                Integer.parseInt(properties.getProperty("pool.validationTimeout", "5")),
+                Long.parseLong(properties.getProperty("pool.leakDetectionThreshold", "0")),
+                Integer.parseInt(properties.getProperty("pool.statementCacheSize", "64")));
+    }
+
+    /**
+     * Borrows a connection, waiting up to the acquire timeout for a free one.
+     * Closing the returned connection gives it back to the pool.
+     *
+     * @throws SQLTimeoutException If no connection became free in time.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                        + " ms waiting for a connection, active: " + active.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        try {
+            PhysicalConnection physical = takeIdleOrOpen();
+            active.incrementAndGet();
+            recordAcquire(System.nanoTime() - start);
+            return physical.lend();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool uses the configured credentials only");
+    }
+
+    /**
+     * Takes the most recently used idle connection that is still valid,
+     * or opens a new one if there is none.
+     */
+    private PhysicalConnection takeIdleOrOpen() throws SQLException {
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            if (physical.isValid()) {
+                return physical;
+            }
+            physical.closeQuietly();
+        }
+        return new PhysicalConnection(DriverManager.getConnection(url, username, password));
+    }
+
+    private void giveBack(PhysicalConnection physical) {
+        active.decrementAndGet();
+        if (closed || !physical.reset()) {
+            physical.closeQuietly();
+        } else {
+            idle.offerFirst(physical);
+        }
+        permits.release();
+    }
+
+    private void recordAcquire(long nanos) {
+        acquireCount.incrementAndGet();
+        acquireNanosTotal.addAndGet(nanos);
+        long max;
+        do {
+            max = acquireNanosMax.get();
+        } while (nanos > max && !acquireNanosMax.compareAndSet(max, nanos));
+    }
+
+    private void evictIdleConnections() {
+        long deadline = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<PhysicalConnection> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            PhysicalConnection physical = iterator.next();
+            if (physical.lastUsedMillis < deadline && idle.remove(physical)) {
+                physical.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            physical.closeQuietly();
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed.
+     */
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool.
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of threads waiting for a free connection.
+     */
+    public int getWaitingThreads() {
+        return waiting.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of connections borrowed since the pool was created.
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * @return the average time a borrow took, including waiting for a free connection.
+     */
+    public long getAverageAcquireNanos() {
+        long count = acquireCount.get();
+        return count == 0 ? 0 : acquireNanosTotal.get() / count;
+    }
+
+    /**
+     * @return the longest time a borrow took.
+     */
+    public long getMaxAcquireNanos() {
+        return acquireNanosMax.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("active=%d, idle=%d, waiting=%d, max=%d, acquired=%d, avgAcquire=%.3f ms, maxAcquire=%.3f ms",
+                getActiveConnections(), getIdleConnections(), getWaitingThreads(), maxSize, getAcquireCount(),
+                getAverageAcquireNanos() / 1e6, getMaxAcquireNanos() / 1e6);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + type);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) {
+        return type.isInstance(this);
+    }
+
+    /**
+     * An open connection to the database owned by the pool.
+     */
+    private class PhysicalConnection {
+        private final Connection connection;
+        private final StatementCache statementCache;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        PhysicalConnection(Connection connection) {
+            this.connection = connection;
+            this.statementCache = statementCacheSize > 0
+                    ? new StatementCache(connection, statementCacheSize)
+                    : null;
+        }
+
+        boolean isValid() {
+            try {
+                return connection.isValid(validationTimeoutSeconds);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Restores the default state before the connection goes back to the pool.
+         *
+         * @return false if the connection is broken and must not be reused.
+         */
+        boolean reset() {
+            lastUsedMillis = System.currentTimeMillis();
+            try {
+                if (connection.isClosed()) {
+                    return false;
+                }
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                connection.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void closeQuietly() {
+            if (statementCache != null) {
+                statementCache.close();
+            }
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        Connection lend() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    /**
+     * The handle given to a caller for one borrow of a physical connection.
+     */
+    private class Lease implements InvocationHandler {
+        private final PhysicalConnection physical;
+        private final ScheduledFuture<?> leakReport;
+        private boolean returned;
+
+        Lease(PhysicalConnection physical) {
+            this.physical = physical;
+            if (leakDetectionThresholdMillis > 0) {
+                Exception borrowedAt = new Exception("Connection borrowed here");
+                this.leakReport = housekeeper.schedule(() -> {
+                    System.err.println("Possible connection leak: not returned after "
+                            + leakDetectionThresholdMillis + " ms");
+                    borrowedAt.printStackTrace();
+                }, leakDetectionThresholdMillis, TimeUnit.MILLISECONDS);
+            } else {
+                this.leakReport = null;
+            }
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        if (leakReport != null) {
+                            leakReport.cancel(false);
+                        }
+                        giveBack(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.connection.isClosed();
+                case "prepareStatement":
+                    if (!returned && physical.statementCache != null && isCacheable(args)) {
+                        return physical.statementCache.prepare((Connection) proxy, (String) args[0],
+                                args.length == 1 ? Statement.NO_GENERATED_KEYS : (Integer) args[1]);
+                    }
+                    return invokePhysical(method, args);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + physical.connection;
+                default:
+                    return invokePhysical(method, args);
+            }
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable {
+            if (returned) {
+                throw new SQLException("Connection is closed");
+            }
+            try {
+                return method.invoke(physical.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Only {@code prepareStatement(sql)} and {@code prepareStatement(sql, autoGeneratedKeys)} are cached.
+         */
+        private boolean isCacheable(Object[] args) {
+            return args.length == 1 || (args.length == 2 && args[1] instanceof Integer);
+        }
+    }
+}
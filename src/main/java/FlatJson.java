@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes JSON objects whose values are strings, numbers, booleans or
+ * {@code null}, one object per line as in the JSON-lines format.
+ */
+final class FlatJson {
+
+    private FlatJson() {
+    }
+
+    /**
+     * Parses one object. Values are returned as their text, strings unescaped,
+     * and {@code null} values as {@code null}.
+     *
+     * @throws IllegalArgumentException If the text is not a flat JSON object.
+     */
+    static Map<String, String> parse(String text) {
+        Parser parser = new Parser(text);
+        Map<String, String> object = parser.readObject();
+        parser.skipSpace();
+        if (parser.position != text.length()) {
+            throw parser.error("Unexpected text after the object");
+        }
+        return object;
+    }
+
+    /**
+     * Appends the object on one line, without the line break. Numbers and booleans
+     * are written as such, other values as strings.
+     */
+    static void format(Appendable out, Map<String, ?> object) {
+        try {
+            out.append('{');
+            String separator = "";
+            for (Map.Entry<String, ?> entry : object.entrySet()) {
+                out.append(separator);
+                appendString(out, entry.getKey());
+                out.append(':');
+                Object value = entry.getValue();
+                if (value == null || value instanceof Number || value instanceof Boolean) {
+                    out.append(String.valueOf(value));
+                } else {
+                    appendString(out, value.toString());
+                }
+                separator = ",";
+            }
+            out.append('}');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendString(Appendable out, String text) throws IOException {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> readObject() {
+            Map<String, String> object = new LinkedHashMap<>();
+            expect('{');
+            skipSpace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipSpace();
+                String name = readString();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                object.put(name, readValue());
+                skipSpace();
+                char c = next();
+                if (c == '}') {
+                    return object;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("Nested values are not supported");
+            }
+            int start = position;
+            while (position < text.length() && ",} \t".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty()) {
+                throw error("Expected a value");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Incomplete escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped); // \" \\ \/
+                }
+            }
+        }
+
+        void skipSpace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw error("Unexpected end of line");
+            }
+            return text.charAt(position);
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * An {@link IAuthorRepository} which passes every call to another repository.
+ * Decorators extend it and override only the calls they change.
+ */
+public abstract class ForwardingAuthorRepository implements IAuthorRepository {
+    protected final IAuthorRepository delegate;
+
+    protected ForwardingAuthorRepository(IAuthorRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void initialize() {
+        delegate.initialize();
+    }
+
+    @Override
+    public Collection<Author> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public Stream<Author> stream() {
+        return delegate.stream();
+    }
+
+    @Override
+    public void forEach(Consumer<Author> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public Optional<Author> getById(int n) {
+        return delegate.getById(n);
+    }
+
+    @Override
+    public Map<Integer, Author> getByIds(Collection<Integer> ids) {
+        return delegate.getByIds(ids);
+    }
+
+    @Override
+    public Page<Author> getPage(String pageToken, int pageSize) {
+        return delegate.getPage(pageToken, pageSize);
+    }
+
+    @Override
+    public void save(Author author) {
+        delegate.save(author);
+    }
+
+    @Override
+    public void saveAll(Collection<Author> authors) {
+        delegate.saveAll(authors);
+    }
+
+    @Override
+    public void deleteById(int id) {
+        delegate.deleteById(id);
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        delegate.deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAuthorsTable() {
+        delegate.deleteAuthorsTable();
+    }
+
+    @Override
+    public void printAuthors(Collection<Author> authors) {
+        delegate.printAuthors(authors);
+    }
+
+    @Override
+    public void printAuthors(Stream<Author> authors) {
+        delegate.printAuthors(authors);
+    }
+
+    @Override
+    public void printAuthor(Author author) {
+        delegate.printAuthor(author);
+    }
+
+    @Override
+    public Stream<Change<Author>> changesSince(long version) {
+        return delegate.changesSince(version);
+    }
+}
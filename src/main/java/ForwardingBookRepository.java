@@ -0,0 +1,143 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * An {@link IBookRepository} which passes every call to another repository.
+ * Decorators extend it and override only the calls they change.
+ */
+public abstract class ForwardingBookRepository implements IBookRepository {
+    protected final IBookRepository delegate;
+
+    protected ForwardingBookRepository(IBookRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Collection<Book> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public Stream<Book> stream() {
+        return delegate.stream();
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public void initialize() {
+        delegate.initialize();
+    }
+
+    @Override
+    public Optional<Book> getById(int id) {
+        return delegate.getById(id);
+    }
+
+    @Override
+    public Map<Integer, Book> getByIds(Collection<Integer> ids) {
+        return delegate.getByIds(ids);
+    }
+
+    @Override
+    public Page<Book> getPage(BookSort sort, String pageToken, int pageSize) {
+        return delegate.getPage(sort, pageToken, pageSize);
+    }
+
+    @Override
+    public void save(Book book) {
+        delegate.save(book);
+    }
+
+    @Override
+    public void saveAll(Collection<Book> books) {
+        delegate.saveAll(books);
+    }
+
+    @Override
+    public void deleteById(int id) {
+        delegate.deleteById(id);
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        delegate.deleteAllById(ids);
+    }
+
+    @Override
+    public Optional<Collection<Book>> searchBookByAuthorName(String text) {
+        return delegate.searchBookByAuthorName(text);
+    }
+
+    @Override
+    public List<Book> searchBooks(String text, int limit) {
+        return delegate.searchBooks(text, limit);
+    }
+
+    @Override
+    public void printBooks(Collection<Book> books) {
+        delegate.printBooks(books);
+    }
+
+    @Override
+    public void printBooks(Stream<Book> books) {
+        delegate.printBooks(books);
+    }
+
+    @Override
+    public void printBook(Book book) {
+        delegate.printBook(book);
+    }
+
+    @Override
+    public void deleteBooksTable() {
+        delegate.deleteBooksTable();
+    }
+
+    @Override
+    public Optional<Collection<Book>> getBookBetweenYear(int year1, int year2) {
+        return delegate.getBookBetweenYear(year1, year2);
+    }
+
+    @Override
+    public Page<Book> getPageBetweenYear(int year1, int year2, String pageToken, int pageSize) {
+        return delegate.getPageBetweenYear(year1, year2, pageToken, pageSize);
+    }
+
+    @Override
+    public Stream<Book> streamBetweenYear(int year1, int year2) {
+        return delegate.streamBetweenYear(year1, year2);
+    }
+
+    @Override
+    public Stream<Book> streamByAuthorId(int authorId) {
+        return delegate.streamByAuthorId(authorId);
+    }
+
+    @Override
+    public BookStats getBookStats() {
+        return delegate.getBookStats();
+    }
+
+    @Override
+    public Stream<AuthorBookStats> streamAuthorStats() {
+        return delegate.streamAuthorStats();
+    }
+
+    @Override
+    public Stream<YearBucket> streamPublishYearHistogram(int bucketWidth) {
+        return delegate.streamPublishYearHistogram(bucketWidth);
+    }
+
+    @Override
+    public Stream<Change<Book>> changesSince(long version) {
+        return delegate.changesSince(version);
+    }
+}
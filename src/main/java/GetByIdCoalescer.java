@@ -0,0 +1,144 @@
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Merges single lookups by ID arriving close together into one batched lookup.
+ * <p>
+ * The first request opens a window of {@code windowMillis}; every request made
+ * until the window closes, or until {@code maxBatchSize} distinct IDs are waiting,
+ * is answered by one call of the batch loader, typically a repository's
+ * {@code getByIds}. Requests for the same ID share the result.
+ * <p>
+ * Once the coalescer is closed, new requests fail with {@link IllegalStateException}.
+ */
+public class GetByIdCoalescer<T> implements AutoCloseable {
+    private final Function<Collection<Integer>, Map<Integer, T>> batchLoader;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Executor loadExecutor;
+    private final ScheduledExecutorService timer;
+
+    private Map<Integer, CompletableFuture<Optional<T>>> pending = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * @param batchLoader  Loads the values for a batch of IDs; missing IDs are absent from the result.
+     * @param windowMillis How long to collect requests after the first one.
+     * @param maxBatchSize How many distinct IDs close the window early.
+     * @param loadExecutor Runs the batch loads. It must not be the executor of callers
+     *                     blocking in {@link #get(int)}, or they may wait for themselves.
+     */
+    public GetByIdCoalescer(Function<Collection<Integer>, Map<Integer, T>> batchLoader,
+                            long windowMillis, int maxBatchSize, Executor loadExecutor) {
+        this.batchLoader = batchLoader;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.loadExecutor = loadExecutor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "get-by-id-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the future value, failed with {@link IllegalStateException} if the coalescer is closed.
+     */
+    public CompletableFuture<Optional<T>> getById(int id) {
+        Map<Integer, CompletableFuture<Optional<T>>> full = null;
+        CompletableFuture<Optional<T>> result;
+        synchronized (this) {
+            if (closed) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(new IllegalStateException("The coalescer is closed"));
+                return result;
+            }
+            result = pending.get(id);
+            if (result != null) {
+                return result;
+            }
+            result = new CompletableFuture<>();
+            pending.put(id, result);
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            submit(full);
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the ID and waits for the batch it joined.
+     */
+    public Optional<T> get(int id) {
+        return getById(id).join();
+    }
+
+    private void flush() {
+        Map<Integer, CompletableFuture<Optional<T>>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return; // taken early by a full batch
+            }
+            batch = takePending();
+        }
+        submit(batch);
+    }
+
+    private void submit(Map<Integer, CompletableFuture<Optional<T>>> batch) {
+        try {
+            loadExecutor.execute(() -> load(batch));
+        } catch (RejectedExecutionException e) {
+            batch.values().forEach(result -> result.completeExceptionally(e));
+        }
+    }
+
+    private Map<Integer, CompletableFuture<Optional<T>>> takePending() {
+        Map<Integer, CompletableFuture<Optional<T>>> batch = pending;
+        pending = new HashMap<>();
+        return batch;
+    }
+
+    private void load(Map<Integer, CompletableFuture<Optional<T>>> batch) {
+        try {
+            Map<Integer, T> found = batchLoader.apply(batch.keySet());
+            batch.forEach((id, result) -> result.complete(Optional.ofNullable(found.get(id))));
+        } catch (Throwable e) {
+            batch.values().forEach(result -> result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Stops the timer. Requests still waiting for their window are answered at once,
+     * on the calling thread.
+     */
+    @Override
+    public void close() {
+        Map<Integer, CompletableFuture<Optional<T>>> batch;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            // no window is scheduled after this, so the timer can be stopped
+            closed = true;
+            batch = takePending();
+        }
+        timer.shutdownNow();
+        if (!batch.isEmpty()) {
+            load(batch);
+        }
+    }
+}
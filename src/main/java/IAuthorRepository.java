@@ -1,5 +1,8 @@
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface IAuthorRepository {
 
@@ -7,15 +10,42 @@ public interface IAuthorRepository {
 
     Collection<Author> getAll();
 
+    Stream<Author> stream();
+
+    void forEach(Consumer<Author> action);
+
     Optional<Author> getById(int n);
 
+    Map<Integer, Author> getByIds(Collection<Integer> ids);
+
+    Page<Author> getPage(String pageToken, int pageSize);
+
     void save(Author author);
 
+    void saveAll(Collection<Author> authors);
+
     void deleteById(int id);
 
+    /**
+     * Deletes the authors in one transaction.
+     *
+     * @throws IllegalArgumentException If there is no author with one of the IDs; then none is deleted.
+     * @throws IllegalStateException    If one of the authors still has books.
+     */
+    void deleteAllById(Collection<Integer> ids);
+
     void deleteAuthorsTable();
 
     void printAuthors(Collection<Author> authors);
 
+    void printAuthors(Stream<Author> authors);
+
     void printAuthor(Author author);
+
+    /**
+     * Streams the authors written and deleted after the version, see {@link Change}.
+     * A caller keeps the highest version it has seen and passes it to the next call.
+     * The stream must be closed.
+     */
+    Stream<Change<Author>> changesSince(long version);
 }
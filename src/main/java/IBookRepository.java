@@ -1,28 +1,96 @@
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface IBookRepository {
 
 
     Collection<Book> getAll();
 
+    Stream<Book> stream();
+
+    void forEach(Consumer<Book> action);
+
     void initialize();
 
     Optional<Book> getById(int id);
 
+    Map<Integer, Book> getByIds(Collection<Integer> ids);
+
+    Page<Book> getPage(BookSort sort, String pageToken, int pageSize);
+
     void save(Book book);
 
+    void saveAll(Collection<Book> books);
+
     void deleteById(int id);
 
+    /**
+     * Deletes the books in one transaction.
+     *
+     * @throws IllegalArgumentException If there is no book with one of the IDs; then none is deleted.
+     */
+    void deleteAllById(Collection<Integer> ids);
+
     Optional<Collection<Book>> searchBookByAuthorName(String text);
 
+    List<Book> searchBooks(String text, int limit);
+
     void printBooks(Collection<Book> books);
 
+    void printBooks(Stream<Book> books);
+
     void printBook(Book book);
 
     void deleteBooksTable();
 
     Optional<Collection<Book>> getBookBetweenYear(int year1, int year2);
 
+    /**
+     * Returns a page of the books published from {@code year1} to {@code year2}
+     * inclusive with their authors, ordered by publish year and ID.
+     *
+     * @param pageToken The token of the previous page, or {@code null} for the first page.
+     */
+    Page<Book> getPageBetweenYear(int year1, int year2, String pageToken, int pageSize);
+
+    /**
+     * Streams the books published from {@code year1} to {@code year2} inclusive
+     * with their authors, ordered by publish year. The stream must be closed.
+     */
+    Stream<Book> streamBetweenYear(int year1, int year2);
+
+    /**
+     * Streams the books of the author, ordered by ID. The stream must be closed.
+     */
+    Stream<Book> streamByAuthorId(int authorId);
+
+    /**
+     * @return the number of books and their page statistics over all books.
+     */
+    BookStats getBookStats();
+
+    /**
+     * Streams the book statistics of every author with books, ordered by author ID.
+     * The stream must be closed.
+     */
+    Stream<AuthorBookStats> streamAuthorStats();
+
+    /**
+     * Streams the book statistics per range of {@code bucketWidth} publish years,
+     * in the order of the years. Ranges without books are omitted. The stream must be closed.
+     */
+    Stream<YearBucket> streamPublishYearHistogram(int bucketWidth);
+
+    /**
+     * Streams the books written and deleted after the version, see {@link Change}.
+     * A caller keeps the highest version it has seen and passes it to the next call.
+     * The stream must be closed.
+     */
+    Stream<Change<Book>> changesSince(long version);
+
 }
@@ -0,0 +1,68 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Splits IDs into chunks for {@code WHERE id IN (...)} queries.
+ * <p>
+ * Every chunk is padded to a power of two by repeating its last ID, so only
+ * a few distinct SQL strings are ever prepared and they stay in the statement cache.
+ */
+final class IdChunks {
+    static final int MAX_CHUNK_SIZE = 512;
+
+    private IdChunks() {
+    }
+
+    /**
+     * @return the distinct IDs in padded chunks of at most {@link #MAX_CHUNK_SIZE}.
+     */
+    static List<List<Integer>> split(Collection<Integer> ids) {
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += MAX_CHUNK_SIZE) {
+            List<Integer> chunk = new ArrayList<>(
+                    distinct.subList(from, Math.min(from + MAX_CHUNK_SIZE, distinct.size())));
+            int padded = Integer.highestOneBit(chunk.size());
+            if (padded < chunk.size()) {
+                padded <<= 1;
+            }
+            chunk.addAll(Collections.nCopies(padded - chunk.size(), chunk.get(chunk.size() - 1)));
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the IDs not found, in the order given.
+     */
+    static List<Integer> missing(Collection<Integer> ids, Collection<Integer> found) {
+        List<Integer> missing = new ArrayList<>(new LinkedHashSet<>(ids));
+        missing.removeAll(found);
+        return missing;
+    }
+
+    /**
+     * Sets the IDs of the chunk as the first parameters of the statement.
+     */
+    static void setIds(PreparedStatement statement, List<Integer> chunk) throws SQLException {
+        for (int i = 0; i < chunk.size(); i++) {
+            statement.setInt(i + 1, chunk.get(i));
+        }
+    }
+
+    /**
+     * @return {@code count} comma-separated parameter placeholders.
+     */
+    static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder("?");
+        for (int i = 1; i < count; i++) {
+            placeholders.append(", ?");
+        }
+        return placeholders.toString();
+    }
+}
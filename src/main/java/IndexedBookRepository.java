@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Answers book searches from an in-memory inverted index instead of the database.
+ * <p>
+ * Titles and author names are split into lower-case words, and every word points
+ * to the books containing it. The index is built by {@link #rebuild()} and kept up
+ * to date by the writes made through this repository. Authors renamed through the
+ * author repository are seen after the next rebuild.
+ */
+public class IndexedBookRepository extends ForwardingBookRepository {
+    private final Map<Integer, Book> books = new HashMap<>();
+    private final TreeMap<String, Set<Integer>> postings = new TreeMap<>();
+
+    public IndexedBookRepository(IBookRepository delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Creates the tables if needed and indexes all books.
+     */
+    @Override
+    public void initialize() {
+        delegate.initialize();
+        rebuild();
+    }
+
+    /**
+     * Indexes all books again, reading them from the underlying repository.
+     */
+    public synchronized void rebuild() {
+        books.clear();
+        postings.clear();
+        delegate.forEach(this::index);
+    }
+
+    public synchronized int size() {
+        return books.size();
+    }
+
+    @Override
+    public void save(Book book) {
+        delegate.save(book);
+        synchronized (this) {
+            index(book);
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Book> books) {
+        delegate.saveAll(books);
+        synchronized (this) {
+            books.forEach(this::index);
+        }
+    }
+
+    @Override
+    public void deleteById(int id) {
+        delegate.deleteById(id);
+        synchronized (this) {
+            unindex(id);
+        }
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        delegate.deleteAllById(ids);
+        synchronized (this) {
+            ids.forEach(this::unindex);
+        }
+    }
+
+    @Override
+    public void deleteBooksTable() {
+        delegate.deleteBooksTable();
+        synchronized (this) {
+            books.clear();
+            postings.clear();
+        }
+    }
+
+    /**
+     * Finds books whose author name contains the text, without querying the database.
+     */
+    @Override
+    public synchronized Optional<Collection<Book>> searchBookByAuthorName(String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        List<Book> found = new ArrayList<>();
+        for (Book book : books.values()) {
+            if (book.author != null && book.author.name != null
+                    && book.author.name.toLowerCase(Locale.ROOT).contains(needle)) {
+                found.add(copyOf(book));
+            }
+        }
+        found.sort((first, second) -> Integer.compare(first.id, second.id));
+        return found.isEmpty() ? Optional.empty() : Optional.of(found);
+    }
+
+    /**
+     * Finds books by the words of their title and author name, without querying the database.
+     * <p>
+     * Every word of the text scores 2 for a book having exactly this word and 1 for
+     * a book having a word starting with it. Books are ordered by score, then by ID.
+     *
+     * @param limit The maximum number of books returned.
+     * @throws IllegalArgumentException If the limit is not positive.
+     */
+    @Override
+    public synchronized List<Book> searchBooks(String text, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        Map<Integer, Integer> scores = new HashMap<>();
+        for (String word : tokenize(text)) {
+            Map<Integer, Integer> wordScores = new HashMap<>();
+            for (Map.Entry<String, Set<Integer>> posting
+                    : postings.subMap(word, true, word + Character.MAX_VALUE, false).entrySet()) {
+                int score = posting.getKey().equals(word) ? 2 : 1;
+                for (Integer id : posting.getValue()) {
+                    wordScores.merge(id, score, Math::max);
+                }
+            }
+            wordScores.forEach((id, score) -> scores.merge(id, score, Integer::sum));
+        }
+
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort((first, second) -> first.getValue().equals(second.getValue())
+                ? Integer.compare(first.getKey(), second.getKey())
+                : Integer.compare(second.getValue(), first.getValue()));
+
+        List<Book> found = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            found.add(copyOf(books.get(ranked.get(i).getKey())));
+        }
+        return found;
+    }
+
+    private void index(Book book) {
+        unindex(book.id);
+        Book copy = copyOf(book);
+        books.put(copy.id, copy);
+        for (String word : wordsOf(copy)) {
+            postings.computeIfAbsent(word, key -> new HashSet<>()).add(copy.id);
+        }
+    }
+
+    private void unindex(int id) {
+        Book previous = books.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String word : wordsOf(previous)) {
+            Set<Integer> ids = postings.get(word);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+    }
+
+    private static Set<String> wordsOf(Book book) {
+        Set<String> words = new HashSet<>(tokenize(book.title));
+        if (book.author != null) {
+            words.addAll(tokenize(book.author.name));
+        }
+        return words;
+    }
+
+    /**
+     * Splits the text into lower-case words of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static Book copyOf(Book book) {
+        Book copy = new Book();
+        copy.id = book.id;
+        copy.title = book.title;
+        copy.publishYear = book.publishYear;
+        copy.pagesCount = book.pagesCount;
+        copy.version = book.version;
+        copy.savedState = book.savedState;
+        if (book.author != null) {
+            Author author = new Author();
+            author.id = book.author.id;
+            author.name = book.author.name;
+            author.birthYear = book.author.birthYear;
+            author.version = book.author.version;
+            author.savedState = book.author.savedState;
+            copy.author = author;
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * An {@link IAuthorRepository} which records every call in {@link RepositoryMetrics},
+ * under the name {@code authors.<method>}. Printing is not measured.
+ */
+public class InstrumentedAuthorRepository extends ForwardingAuthorRepository {
+    private final RepositoryMetrics metrics;
+
+    public InstrumentedAuthorRepository(IAuthorRepository delegate, RepositoryMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void initialize() {
+        metrics.measure("authors.initialize", delegate::initialize);
+    }
+
+    @Override
+    public Collection<Author> getAll() {
+        return metrics.measure("authors.getAll", delegate::getAll, Collection::size);
+    }
+
+    @Override
+    public Stream<Author> stream() {
+        return metrics.measureStream("authors.stream", delegate::stream);
+    }
+
+    @Override
+    public void forEach(Consumer<Author> action) {
+        long[] rows = new long[1];
+        metrics.measure("authors.forEach", () -> {
+            delegate.forEach(author -> {
+                rows[0]++;
+                action.accept(author);
+            });
+            return null;
+        }, result -> rows[0]);
+    }
+
+    @Override
+    public Optional<Author> getById(int n) {
+        return metrics.measure("authors.getById", () -> delegate.getById(n), author -> author.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Map<Integer, Author> getByIds(Collection<Integer> ids) {
+        return metrics.measure("authors.getByIds", () -> delegate.getByIds(ids), Map::size);
+    }
+
+    @Override
+    public Page<Author> getPage(String pageToken, int pageSize) {
+        return metrics.measure("authors.getPage", () -> delegate.getPage(pageToken, pageSize),
+                page -> page.items.size());
+    }
+
+    @Override
+    public void save(Author author) {
+        metrics.measure("authors.save", () -> delegate.save(author));
+    }
+
+    @Override
+    public void saveAll(Collection<Author> authors) {
+        metrics.measure("authors.saveAll", () -> delegate.saveAll(authors));
+    }
+
+    @Override
+    public void deleteById(int id) {
+        metrics.measure("authors.deleteById", () -> delegate.deleteById(id));
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        metrics.measure("authors.deleteAllById", () -> delegate.deleteAllById(ids));
+    }
+
+    @Override
+    public void deleteAuthorsTable() {
+        metrics.measure("authors.deleteAuthorsTable", delegate::deleteAuthorsTable);
+    }
+
+    @Override
+    public Stream<Change<Author>> changesSince(long version) {
+        return metrics.measureStream("authors.changesSince", () -> delegate.changesSince(version));
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * An {@link IBookRepository} which records every call in {@link RepositoryMetrics},
+ * under the name {@code books.<method>}. Printing is not measured.
+ */
+public class InstrumentedBookRepository extends ForwardingBookRepository {
+    private final RepositoryMetrics metrics;
+
+    public InstrumentedBookRepository(IBookRepository delegate, RepositoryMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Collection<Book> getAll() {
+        return metrics.measure("books.getAll", delegate::getAll, Collection::size);
+    }
+
+    @Override
+    public Stream<Book> stream() {
+        return metrics.measureStream("books.stream", delegate::stream);
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        long[] rows = new long[1];
+        metrics.measure("books.forEach", () -> {
+            delegate.forEach(book -> {
+                rows[0]++;
+                action.accept(book);
+            });
+            return null;
+        }, result -> rows[0]);
+    }
+
+    @Override
+    public void initialize() {
+        metrics.measure("books.initialize", delegate::initialize);
+    }
+
+    @Override
+    public Optional<Book> getById(int id) {
+        return metrics.measure("books.getById", () -> delegate.getById(id), book -> book.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Map<Integer, Book> getByIds(Collection<Integer> ids) {
+        return metrics.measure("books.getByIds", () -> delegate.getByIds(ids), Map::size);
+    }
+
+    @Override
+    public Page<Book> getPage(BookSort sort, String pageToken, int pageSize) {
+        return metrics.measure("books.getPage", () -> delegate.getPage(sort, pageToken, pageSize),
+                page -> page.items.size());
+    }
+
+    @Override
+    public void save(Book book) {
+        metrics.measure("books.save", () -> delegate.save(book));
+    }
+
+    @Override
+    public void saveAll(Collection<Book> books) {
+        metrics.measure("books.saveAll", () -> delegate.saveAll(books));
+    }
+
+    @Override
+    public void deleteById(int id) {
+        metrics.measure("books.deleteById", () -> delegate.deleteById(id));
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        metrics.measure("books.deleteAllById", () -> delegate.deleteAllById(ids));
+    }
+
+    @Override
+    public Optional<Collection<Book>> searchBookByAuthorName(String text) {
+        return metrics.measure("books.searchBookByAuthorName", () -> delegate.searchBookByAuthorName(text),
+                books -> books.map(Collection::size).orElse(0));
+    }
+
+    @Override
+    public List<Book> searchBooks(String text, int limit) {
+        return metrics.measure("books.searchBooks", () -> delegate.searchBooks(text, limit), List::size);
+    }
+
+    @Override
+    public void deleteBooksTable() {
+        metrics.measure("books.deleteBooksTable", delegate::deleteBooksTable);
+    }
+
+    @Override
+    public Optional<Collection<Book>> getBookBetweenYear(int year1, int year2) {
+        return metrics.measure("books.getBookBetweenYear", () -> delegate.getBookBetweenYear(year1, year2),
+                books -> books.map(Collection::size).orElse(0));
+    }
+
+    @Override
+    public Page<Book> getPageBetweenYear(int year1, int year2, String pageToken, int pageSize) {
+        return metrics.measure("books.getPageBetweenYear",
+                () -> delegate.getPageBetweenYear(year1, year2, pageToken, pageSize), page -> page.items.size());
+    }
+
+    @Override
+    public Stream<Book> streamBetweenYear(int year1, int year2) {
+        return metrics.measureStream("books.streamBetweenYear", () -> delegate.streamBetweenYear(year1, year2));
+    }
+
+    @Override
+    public Stream<Book> streamByAuthorId(int authorId) {
+        return metrics.measureStream("books.streamByAuthorId", () -> delegate.streamByAuthorId(authorId));
+    }
+
+    @Override
+    public BookStats getBookStats() {
+        return metrics.measure("books.getBookStats", delegate::getBookStats, stats -> 1);
+    }
+
+    @Override
+    public Stream<AuthorBookStats> streamAuthorStats() {
+        return metrics.measureStream("books.streamAuthorStats", delegate::streamAuthorStats);
+    }
+
+    @Override
+    public Stream<YearBucket> streamPublishYearHistogram(int bucketWidth) {
+        return metrics.measureStream("books.streamPublishYearHistogram",
+                () -> delegate.streamPublishYearHistogram(bucketWidth));
+    }
+
+    @Override
+    public Stream<Change<Book>> changesSince(long version) {
+        return metrics.measureStream("books.changesSince", () -> delegate.changesSince(version));
+    }
+}
@@ -1,45 +1,130 @@
+import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
 
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 
 /**
  * The repository for {@link Book},
- * which uses {@link java.sql.Connection} and SQL to persist data.
+ * which uses {@link DataSource} connections and SQL to persist data.
  */
 public class JDBCBookRepository implements IBookRepository {
-    private final Connection connection;
+    /**
+     * Loads books together with their authors, so a book and its author
+     * are mapped from the same row without an extra query per book.
+     */
+    private static final String SELECT_BOOKS_WITH_AUTHORS =
+            "SELECT books.id_book, books.title, books.pages_count, books.publish_year, books.author_id," +
+                    " books.row_version AS book_row_version, authors.id_author, authors.name, authors.birth_year," +
+                    " authors.row_version AS author_row_version" +
+                    " FROM books" +
+                    " LEFT JOIN authors ON authors.id_author = books.author_id";
+
+    /**
+     * How many authors a streamed result keeps for reuse by the following books.
+     */
+    private static final int STREAM_AUTHOR_CACHE_SIZE = 1024;
+
+    /**
+     * The updatable columns, in the order of {@link #stateOf(Book)}.
+     */
+    private static final String[] COLUMNS = {"title", "pages_count", "publish_year", "author_id"};
+
+    /**
+     * The aggregates of {@link BookStats} over the selected books.
+     */
+    private static final String AGGREGATES =
+            " COUNT(*) AS book_count, SUM(books.pages_count) AS total_pages," +
+                    " MIN(books.pages_count) AS min_pages, MAX(books.pages_count) AS max_pages";
+
+    private static final String INSERT_SUMMARY =
+            "INSERT INTO author_book_stats(author_id, book_count, total_pages, min_pages, max_pages)" +
+                    " SELECT author_id, COUNT(*), SUM(pages_count), MIN(pages_count), MAX(pages_count)" +
+                    " FROM books";
+
+    private final TransactionalDataSource dataSource;
     private final IAuthorRepository authorRepository;
+    private int batchSize = 1000;
+    private int fetchSize;
+    private volatile boolean summaryTableEnabled;
+    private int conflictRetries;
 
     /**
      * Creates an instance of the class.
      *
-     * @param connection The opened and prepared connection.
+     * @param dataSource The source of connections, one is borrowed per operation.
      */
-    public JDBCBookRepository(Connection connection,
+    public JDBCBookRepository(DataSource dataSource,
                               IAuthorRepository authorRepository) {
-        this.connection = connection;
+        this.dataSource = TransactionalDataSource.of(dataSource);
         this.authorRepository = authorRepository;
     }
 
     /**
-     * Initializes required tables if needed.
+     * Sets how many rows {@link #saveAll(Collection)} sends to the database in one batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the fetch size used by {@link #stream()}. The default 0 leaves it to the driver,
+     * {@link Integer#MIN_VALUE} makes MySQL stream rows one by one.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Sets how many times a save which hit an {@link OptimisticLockException} is repeated,
+     * 0 by default. Before a repeat the conflicting book or author is loaded again and keeps
+     * the columns changed by the caller, see {@link #reapply(Book, Book)}.
+     * Saves inside a transaction of the caller are not repeated, the whole transaction must be.
+     */
+    public void setConflictRetries(int conflictRetries) {
+        if (conflictRetries < 0) {
+            throw new IllegalArgumentException("Conflict retries must not be negative: " + conflictRetries);
+        }
+        this.conflictRetries = conflictRetries;
+    }
+
+    /**
+     * Keeps the per-author statistics in the {@code author_book_stats} table, updated
+     * by every write, so {@link #streamAuthorStats()} reads them without aggregating
+     * the books. Every process writing books must enable it, otherwise the table
+     * goes stale until {@link #rebuildSummaryTable()}.
+     */
+    public void setSummaryTableEnabled(boolean summaryTableEnabled) {
+        this.summaryTableEnabled = summaryTableEnabled;
+    }
+
+    /**
+     * Creates or upgrades the tables and indexes, see {@link SchemaMigrator}.
+     * Rebuilds the summary table if it is enabled.
      */
     public void initialize() {
-        try (Statement statement = connection.createStatement()) {
-
-            statement.executeUpdate("CREATE TABLE IF NOT EXISTS books(" +
-                    " id_book INTEGER PRIMARY KEY AUTO_INCREMENT, " +
-                    " title VARCHAR(200), " +
-                    " pages_count INTEGER, " +
-                    " publish_year INTEGER, " +
-                    " author_id INTEGER" +
-                    ")");
-        } catch (SQLException e) {
-            System.out.println("Не удалось создать таблицу для книги");
-            ;
+        try {
+            new SchemaMigrator(dataSource).migrate();
+            if (summaryTableEnabled) {
+                rebuildSummaryTable();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Не удалось создать таблицу для книги: " + e.getMessage());
         }
     }
 
@@ -50,12 +135,14 @@ public class JDBCBookRepository implements IBookRepository {
      */
     @Override
     public Collection<Book> getAll() {
-        try (Statement statement = connection.createStatement();
-             ResultSet cursor = statement.executeQuery("SELECT * FROM books")) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet cursor = statement.executeQuery(SELECT_BOOKS_WITH_AUTHORS)) {
             Collection<Book> books = new ArrayList<>();
+            Map<Integer, Author> authors = new HashMap<>();
             while (cursor.next()) {
                 Book book = createBookFromCursorIfPossible(cursor);
-                book.author = createAuthorFromBookCursor(cursor);
+                book.author = createAuthorFromBookCursor(cursor, authors);
                 books.add(book);
             }
             return books;
@@ -64,6 +151,199 @@ public class JDBCBookRepository implements IBookRepository {
         }
     }
 
+    /**
+     * Streams all books with their authors without loading them into memory at once.
+     * The stream holds a connection until it is closed.
+     */
+    @Override
+    public Stream<Book> stream() {
+        return streamBooks(SELECT_BOOKS_WITH_AUTHORS, statement -> {
+        });
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        try (Stream<Book> books = stream()) {
+            books.forEach(action);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The rows are read in the order of the publish year index.
+     */
+    @Override
+    public Stream<Book> streamBetweenYear(int year1, int year2) {
+        return streamBooks(SELECT_BOOKS_WITH_AUTHORS +
+                " WHERE books.publish_year BETWEEN ? AND ?" +
+                " ORDER BY books.publish_year, books.id_book", statement -> {
+            statement.setInt(1, year1);
+            statement.setInt(2, year2);
+        });
+    }
+
+    /**
+     * Streams the deletions after the version, then the books written after it
+     * with their authors, each in version order. An ID deleted and used again by
+     * a later book ends up present. {@code changesSince(0)} returns every book.
+     * <p>
+     * Only the versions committed when this method is called are read, so
+     * continuing from the highest version returned misses no change.
+     * The stream must be closed.
+     */
+    @Override
+    public Stream<Change<Book>> changesSince(long version) {
+        long upTo = RowVersions.current(dataSource);
+        List<Change<Book>> deletions = RowVersions.tombstonesSince(dataSource, "books", version, upTo);
+        return Stream.concat(deletions.stream(), streamBooks(SELECT_BOOKS_WITH_AUTHORS +
+                " WHERE books.row_version > ? AND books.row_version <= ?" +
+                " ORDER BY books.row_version, books.id_book", statement -> {
+            statement.setLong(1, version);
+            statement.setLong(2, upTo);
+        }).map(book -> new Change<>(book.version, book.id, book)));
+    }
+
+    @Override
+    public Stream<Book> streamByAuthorId(int authorId) {
+        return streamBooks(SELECT_BOOKS_WITH_AUTHORS +
+                " WHERE books.author_id = ?" +
+                " ORDER BY books.id_book", statement -> statement.setInt(1, authorId));
+    }
+
+    /**
+     * Streams the books selected by the query. Only a bounded number of
+     * recently seen authors is kept for reuse, so memory use does not grow
+     * with the size of the result.
+     */
+    private Stream<Book> streamBooks(String sql, JdbcStreams.ParameterBinder binder) {
+        Map<Integer, Author> authors = new LinkedHashMap<Integer, Author>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Author> eldest) {
+                return size() > STREAM_AUTHOR_CACHE_SIZE;
+            }
+        };
+        return JdbcStreams.query(dataSource, sql, fetchSize, binder, cursor -> {
+            Book book = createBookFromCursorIfPossible(cursor);
+            book.author = createAuthorFromBookCursor(cursor, authors);
+            return book;
+        });
+    }
+
+    /**
+     * Loads the books with the given IDs and their authors, in chunked
+     * {@code IN} queries which join the authors, so no further query is needed.
+     * A book's author is shared by all its books in the result.
+     *
+     * @return the found books by ID; missing IDs are absent.
+     */
+    @Override
+    public Map<Integer, Book> getByIds(Collection<Integer> ids) {
+        Map<Integer, Book> books = new HashMap<>();
+        Map<Integer, Author> authors = new HashMap<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (List<Integer> chunk : IdChunks.split(ids)) {
+                try (PreparedStatement statement = connection.prepareStatement(SELECT_BOOKS_WITH_AUTHORS +
+                        " WHERE books.id_book IN (" + IdChunks.placeholders(chunk.size()) + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet cursor = statement.executeQuery()) {
+                        while (cursor.next()) {
+                            Book book = createBookFromCursorIfPossible(cursor);
+                            book.author = createAuthorFromBookCursor(cursor, authors);
+                            books.put(book.id, book);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return books;
+    }
+
+    /**
+     * Returns a page of books with their authors in the given order.
+     * The page is found by an index seek after the last book of the previous page.
+     *
+     * @param pageToken The token of the previous page, or {@code null} for the first page.
+     * @param pageSize  The maximum number of books on the page.
+     * @throws IllegalArgumentException If the token was issued for another order.
+     */
+    @Override
+    public Page<Book> getPage(BookSort sort, String pageToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        PageToken after = pageToken == null ? null : PageToken.decode(pageToken, sort.name());
+
+        String where = "";
+        String order = " ORDER BY books.id_book";
+        if (sort.column != null) {
+            String column = "books." + sort.column;
+            order = " ORDER BY " + column + ", books.id_book";
+            if (after != null && after.lastKey == null) {
+                where = " WHERE (" + column + " IS NULL AND books.id_book > ?) OR " + column + " IS NOT NULL";
+            } else if (after != null) {
+                where = " WHERE " + column + " > ? OR (" + column + " = ? AND books.id_book > ?)";
+            }
+        } else if (after != null) {
+            where = " WHERE books.id_book > ?";
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     SELECT_BOOKS_WITH_AUTHORS + where + order + " LIMIT ?")) {
+            int index = 1;
+            if (after != null) {
+                if (after.lastKey != null) {
+                    bindSortKey(statement, index++, sort, after.lastKey);
+                    bindSortKey(statement, index++, sort, after.lastKey);
+                }
+                statement.setInt(index++, after.lastId);
+            }
+            statement.setInt(index, pageSize + 1);
+
+            List<Book> books = new ArrayList<>();
+            try (ResultSet cursor = statement.executeQuery()) {
+                Map<Integer, Author> authors = new HashMap<>();
+                while (cursor.next()) {
+                    Book book = createBookFromCursorIfPossible(cursor);
+                    book.author = createAuthorFromBookCursor(cursor, authors);
+                    books.add(book);
+                }
+            }
+
+            if (books.size() <= pageSize) {
+                return new Page<>(books, null);
+            }
+            books.remove(pageSize);
+            Book last = books.get(pageSize - 1);
+            return new Page<>(books, new PageToken(sort.name(), last.id, sortKeyOf(sort, last)).encode());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void bindSortKey(PreparedStatement statement, int index, BookSort sort,
+                                    String key) throws SQLException {
+        if (sort == BookSort.PUBLISH_YEAR) {
+            statement.setInt(index, Integer.parseInt(key));
+        } else {
+            statement.setString(index, key);
+        }
+    }
+
+    private static String sortKeyOf(BookSort sort, Book book) {
+        switch (sort) {
+            case PUBLISH_YEAR:
+                return String.valueOf(book.publishYear);
+            case TITLE:
+                return book.title;
+            default:
+                return null;
+        }
+    }
 
     /**
      * @param id
@@ -73,8 +353,9 @@ public class JDBCBookRepository implements IBookRepository {
     @Override
     public Optional<Book> getById(int id) {
         Book book = null;
-        try (PreparedStatement statement = connection.prepareStatement(
-                "SELECT * FROM books WHERE id_book = ?")) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     SELECT_BOOKS_WITH_AUTHORS + " WHERE books.id_book = ?")) {
             statement.setInt(1, id);
 
             try (ResultSet cursor = statement.executeQuery()) {
@@ -82,7 +363,7 @@ public class JDBCBookRepository implements IBookRepository {
                     return Optional.empty();
                 }
                 book = this.createBookFromCursorIfPossible(cursor);
-                book.author = createAuthorFromBookCursor(cursor);
+                book.author = createAuthorFromBookCursor(cursor, new HashMap<>());
             }
 
         } catch (SQLException e) {
@@ -92,15 +373,263 @@ public class JDBCBookRepository implements IBookRepository {
     }
 
     /**
-     * {@inheritDoc}
+     * Saves the book and its author in one transaction.
+     * A book or author loaded by a repository is updated only if it was changed
+     * since, and only in the changed columns.
+     *
+     * @throws OptimisticLockException If the book or its author was changed by someone else since it was loaded.
      */
     @Override
     public void save(Book book) {
-        authorRepository.save(book.author);
-        if (book.id != Book.INVALID_ID) {
-            updateBook(book);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                dataSource.inTransaction(() -> {
+                    authorRepository.save(book.author);
+                    Set<Integer> summaryAuthorIds = affectedAuthorIds(Collections.singletonList(book));
+                    if (book.id != Book.INVALID_ID) {
+                        updateBook(book);
+                    } else {
+                        insertBook(book);
+                    }
+                    refreshSummary(summaryAuthorIds);
+                });
+                return;
+            } catch (OptimisticLockException e) {
+                if (attempt >= conflictRetries || dataSource.isInTransaction()
+                        || !reload(Collections.singletonList(book), e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves all books and their authors in one transaction, sending inserts
+     * and updates in batches. An author shared by several books is written once.
+     * Generated IDs are set to the inserted books and authors, and taken back if the transaction is rolled back.
+     *
+     * @throws OptimisticLockException If a book or author was changed by someone else since it was loaded.
+     */
+    @Override
+    public void saveAll(Collection<Book> books) {
+        List<Author> authors = new ArrayList<>();
+        List<Book> inserts = new ArrayList<>();
+        List<Book> updates = new ArrayList<>();
+        for (Book book : books) {
+            authors.add(book.author);
+            (book.id != Book.INVALID_ID ? updates : inserts).add(book);
+        }
+        if (books.isEmpty()) {
+            return;
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                dataSource.inTransaction(() -> {
+                    authorRepository.saveAll(authors);
+                    Set<Integer> summaryAuthorIds = affectedAuthorIds(books);
+                    insertBooks(inserts);
+                    updateBooks(updates);
+                    refreshSummary(summaryAuthorIds);
+                });
+                return;
+            } catch (OptimisticLockException e) {
+                if (attempt >= conflictRetries || dataSource.isInTransaction() || !reload(books, e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the conflicting book or author again and reapplies the changes of the given
+     * books, or of their authors, with its ID.
+     *
+     * @return false if the row is gone or was changed in the same columns.
+     */
+    private boolean reload(Collection<Book> books, OptimisticLockException conflict) {
+        boolean found = false;
+        if (conflict.table.equals("books")) {
+            Optional<Book> current = getById(conflict.id);
+            if (!current.isPresent()) {
+                return false;
+            }
+            for (Book book : books) {
+                if (book.id == conflict.id) {
+                    if (!reapply(book, current.get())) {
+                        return false;
+                    }
+                    found = true;
+                }
+            }
         } else {
-            insertBook(book);
+            Optional<Author> current = loadAuthor(conflict.id);
+            if (!current.isPresent()) {
+                return false;
+            }
+            for (Book book : books) {
+                if (book.author != null && book.author.id == conflict.id) {
+                    if (!JdbcAuthorRepository.reapply(book.author, current.get())) {
+                        return false;
+                    }
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Moves the changes made to the book since it was loaded onto the current row,
+     * like {@link JdbcAuthorRepository#reapply(Author, Author)}. If only the other writer
+     * changed the author, the book takes the current author, unless its own author
+     * has unsaved changes.
+     *
+     * @param current The book as just loaded.
+     * @return false, leaving the book as is, if its changes are unknown or the same columns were changed.
+     */
+    static boolean reapply(Book book, Book current) {
+        if (book.savedState == null) {
+            return false;
+        }
+        int changed = RowState.changedColumns(book.savedState, stateOf(book));
+        int changedByOthers = RowState.changedColumns(book.savedState, current.savedState);
+        if ((changed & changedByOthers) != 0) {
+            return false;
+        }
+        // the bits are in the order of COLUMNS
+        boolean takeAuthor = (changedByOthers & 1 << 3) != 0;
+        if (takeAuthor && book.author != null
+                && RowState.changedColumns(book.author.savedState, JdbcAuthorRepository.stateOf(book.author)) != 0) {
+            return false;
+        }
+        if ((changed & 1) == 0) {
+            book.title = current.title;
+        }
+        if ((changed & 1 << 1) == 0) {
+            book.pagesCount = current.pagesCount;
+        }
+        if ((changed & 1 << 2) == 0) {
+            book.publishYear = current.publishYear;
+        }
+        if (takeAuthor) {
+            book.author = current.author;
+        }
+        book.savedState = current.savedState;
+        book.version = current.version;
+        return true;
+    }
+
+    /**
+     * Loads an author from the table rather than through the author repository,
+     * whose cache may hold the version which just conflicted.
+     */
+    private Optional<Author> loadAuthor(int id) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT id_author, name, birth_year, row_version AS author_row_version" +
+                             " FROM authors WHERE id_author = ?")) {
+            statement.setInt(1, id);
+            try (ResultSet cursor = statement.executeQuery()) {
+                return cursor.next()
+                        ? Optional.of(createAuthorFromBookCursor(cursor, new HashMap<>()))
+                        : Optional.empty();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void insertBooks(List<Book> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+        long version = RowVersions.pending(dataSource);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO" +
+                             " books(title, pages_count, publish_year, author_id, row_version)" +
+                             " VALUES(?, ?, ?, ?, ?)", RETURN_GENERATED_KEYS)) {
+
+            for (int from = 0; from < books.size(); from += batchSize) {
+                List<Book> batch = books.subList(from, Math.min(from + batchSize, books.size()));
+                for (Book book : batch) {
+                    statement.setString(1, book.title);
+                    statement.setInt(2, book.pagesCount);
+                    statement.setInt(3, book.publishYear);
+                    statement.setInt(4, book.author.id);
+                    statement.setLong(5, version);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                try (ResultSet cursor = statement.getGeneratedKeys()) {
+                    for (Book book : batch) {
+                        if (!cursor.next()) {
+                            throw new RuntimeException("Failed to get generated key for a book");
+                        }
+                        setGeneratedId(book, cursor.getInt(1));
+                        markSaved(book);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Updates the changed books, one batch per set of changed columns
+     * and per whether their version is known.
+     */
+    private void updateBooks(List<Book> books) {
+        // the changed columns shifted left, with the lowest bit set if the version is checked
+        Map<Long, List<Book>> byChangedColumns = new LinkedHashMap<>();
+        for (Book book : books) {
+            int changed = RowState.changedColumns(book.savedState, stateOf(book));
+            if (changed != 0) {
+                long key = (long) changed << 1 | (book.version != 0 ? 1 : 0);
+                byChangedColumns.computeIfAbsent(key, k -> new ArrayList<>()).add(book);
+            }
+        }
+
+        if (byChangedColumns.isEmpty()) {
+            return;
+        }
+        long version = RowVersions.pending(dataSource);
+        for (Map.Entry<Long, List<Book>> group : byChangedColumns.entrySet()) {
+            int changed = (int) (group.getKey() >> 1);
+            boolean checkVersion = (group.getKey() & 1) != 0;
+            List<Book> changedBooks = group.getValue();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(
+                         RowState.updateSql("books", COLUMNS, changed, "id_book", checkVersion))) {
+
+                for (int from = 0; from < changedBooks.size(); from += batchSize) {
+                    List<Book> batch = changedBooks.subList(from, Math.min(from + batchSize, changedBooks.size()));
+                    for (Book book : batch) {
+                        RowState state = stateOf(book);
+                        int index = state.bindChanged(statement, changed);
+                        statement.setLong(index++, version);
+                        statement.setInt(index++, book.id);
+                        if (checkVersion) {
+                            statement.setLong(index, book.version);
+                        }
+                        statement.addBatch();
+                    }
+                    int[] counts = statement.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            throw updateFailed(batch.get(i));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            for (Book book : changedBooks) {
+                markSaved(book);
+            }
         }
     }
 
@@ -108,20 +637,27 @@ public class JDBCBookRepository implements IBookRepository {
      * Inserts new record for the book.
      */
     public void insertBook(Book book) {
-        try (PreparedStatement statement = connection.prepareStatement(
-                "INSERT INTO" +
-                        " books(title, pages_count, publish_year, author_id)" +
-                        " VALUES(?, ?, ?, ?)", RETURN_GENERATED_KEYS)) {
+        dataSource.inTransaction(() -> insertBook(book, RowVersions.pending(dataSource)));
+    }
+
+    private void insertBook(Book book, long version) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO" +
+                             " books(title, pages_count, publish_year, author_id, row_version)" +
+                             " VALUES(?, ?, ?, ?, ?)", RETURN_GENERATED_KEYS)) {
 
             statement.setString(1, book.title);
             statement.setInt(2, book.pagesCount);
             statement.setInt(3, book.publishYear);
             statement.setInt(4, book.author.id);
+            statement.setLong(5, version);
 
             if (statement.executeUpdate() > 0) {
                 try (ResultSet cursor = statement.getGeneratedKeys()) {
                     if (cursor.next()) {
-                        book.id = cursor.getInt(1);
+                        setGeneratedId(book, cursor.getInt(1));
+                        markSaved(book);
                     } else {
                         throw new RuntimeException("Failed to get generated key for a book");
                     }
@@ -135,26 +671,71 @@ public class JDBCBookRepository implements IBookRepository {
     }
 
     /**
-     * Updates existing record of a book, identified by the primary key.
+     * Updates the changed columns of an existing record of a book, identified by the primary key,
+     * if it still has the version the book was loaded with.
      */
 
     private void updateBook(Book book) {
-        try (PreparedStatement statement = connection.prepareStatement(
-                "UPDATE books" +
-                        " SET title = ?, pages_count = ?, publish_year = ?, author_id = ? WHERE id_book = ?")) {
+        RowState state = stateOf(book);
+        int changed = RowState.changedColumns(book.savedState, state);
+        if (changed == 0) {
+            return;
+        }
+        boolean checkVersion = book.version != 0;
+        long version = RowVersions.pending(dataSource);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     RowState.updateSql("books", COLUMNS, changed, "id_book", checkVersion))) {
 
-            statement.setString(1, book.title);
-            statement.setInt(2, book.pagesCount);
-            statement.setInt(3, book.publishYear);
-            statement.setInt(4, book.author.id);
-            statement.setInt(5, book.id);
+            int index = state.bindChanged(statement, changed);
+            statement.setLong(index++, version);
+            statement.setInt(index++, book.id);
+            if (checkVersion) {
+                statement.setLong(index, book.version);
+            }
 
             if (statement.executeUpdate() == 0) {
-                throw new RuntimeException("Failed to update a book record");
+                throw updateFailed(book);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        markSaved(book);
+    }
+
+    /**
+     * @return a conflict if the update was checked against the version of the book.
+     */
+    private static RuntimeException updateFailed(Book book) {
+        return book.version != 0
+                ? new OptimisticLockException("books", book.id, book.version)
+                : new RuntimeException("Failed to update a book record");
+    }
+
+    static RowState stateOf(Book book) {
+        return new RowState(book.title, book.pagesCount, book.publishYear,
+                book.author != null ? book.author.id : null);
+    }
+
+    /**
+     * Sets the generated ID to the inserted book. The previous ID is set back if the insert is rolled back.
+     */
+    private void setGeneratedId(Book book, int id) {
+        int previousId = book.id;
+        book.id = id;
+        dataSource.afterRollback(() -> book.id = previousId);
+    }
+
+    /**
+     * Remembers the current values and the version as saved once the transaction commits.
+     */
+    private void markSaved(Book book) {
+        RowState state = stateOf(book);
+        LongSupplier version = RowVersions.written(dataSource, "books", "id_book", book.id);
+        dataSource.afterCommit(() -> {
+            book.savedState = state;
+            book.version = version.getAsLong();
+        });
     }
 
 
@@ -168,94 +749,279 @@ public class JDBCBookRepository implements IBookRepository {
         book.title = cursor.getString("title");
         book.pagesCount = cursor.getInt("pages_count");
         book.publishYear = cursor.getInt("publish_year");
+        book.version = cursor.getLong("book_row_version");
+        int authorId = cursor.getInt("author_id");
+        book.savedState = new RowState(book.title, book.pagesCount, book.publishYear,
+                cursor.wasNull() ? null : authorId);
 
         return book;
     }
 
-    private Author createAuthorFromBookCursor(ResultSet bookCursor) throws SQLException {
-        int authorId = bookCursor.getInt("author_id");
+    /**
+     * Creates an author instance from the joined columns at the cursor position.
+     * Books of the same author within one result share a single instance.
+     *
+     * @param authors Authors already mapped from the current result, by ID.
+     * @return the author, or {@code null} if the book refers to a missing author.
+     */
+    private Author createAuthorFromBookCursor(ResultSet bookCursor,
+                                              Map<Integer, Author> authors) throws SQLException {
+        int authorId = bookCursor.getInt("id_author");
+        if (bookCursor.wasNull()) {
+            return null;
+        }
 
-        return authorRepository.getById(authorId).get();
+        Author author = authors.get(authorId);
+        if (author == null) {
+            author = new Author();
+            author.id = authorId;
+            author.name = bookCursor.getString("name");
+            author.birthYear = bookCursor.getInt("birth_year");
+            author.version = bookCursor.getLong("author_row_version");
+            author.savedState = JdbcAuthorRepository.stateOf(author);
+            authors.put(authorId, author);
+        }
+        return author;
     }
 
 
+    /**
+     * @throws IllegalArgumentException If there is no book with the ID.
+     */
     @Override
     public void deleteById(int id) {
-        try (PreparedStatement statement1 = connection.prepareStatement("SELECT (1) from books  WHERE id_book = ?")) {
-            statement1.setInt(1, id);
-            if (statement1.executeQuery().next()) {
-                try (PreparedStatement statement =
-                             connection.prepareStatement("DELETE FROM books WHERE id_book = ?")) {
-                    statement.setInt(1, id);
-                    statement.executeUpdate();
-                }
-            } else System.out.println("Книги с таким id нет");
-        } catch (SQLException e) {
-            e.getMessage();
-            throw new RuntimeException(e);
+        deleteAllById(Collections.singletonList(id));
+    }
+
+    /**
+     * Checks that all the books exist, then deletes them with one statement per chunk of IDs.
+     */
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
         }
+        dataSource.inTransaction(() -> {
+            Set<Integer> summaryAuthorIds = new HashSet<>();
+            try (Connection connection = dataSource.getConnection()) {
+                Set<Integer> found = new HashSet<>();
+                for (List<Integer> chunk : IdChunks.split(ids)) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "SELECT id_book, author_id FROM books WHERE id_book IN (" +
+                                    IdChunks.placeholders(chunk.size()) + ")")) {
+                        IdChunks.setIds(statement, chunk);
+                        try (ResultSet cursor = statement.executeQuery()) {
+                            while (cursor.next()) {
+                                found.add(cursor.getInt(1));
+                                int authorId = cursor.getInt(2);
+                                if (summaryTableEnabled && !cursor.wasNull()) {
+                                    summaryAuthorIds.add(authorId);
+                                }
+                            }
+                        }
+                    }
+                }
+                List<Integer> missing = IdChunks.missing(ids, found);
+                if (!missing.isEmpty()) {
+                    throw new IllegalArgumentException(missing.size() == 1
+                            ? "Книги с id " + missing.get(0) + " нет"
+                            : "Книг с id " + missing + " нет");
+                }
+                for (List<Integer> chunk : IdChunks.split(found)) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "DELETE FROM books WHERE id_book IN (" + IdChunks.placeholders(chunk.size()) + ")")) {
+                        IdChunks.setIds(statement, chunk);
+                        statement.executeUpdate();
+                    }
+                }
+                RowVersions.tombstones(dataSource, connection, "books", found);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            refreshSummary(summaryAuthorIds);
+        });
     }
 
+    /**
+     * Finds the books published from {@code year1} to {@code year2} inclusive
+     * with their authors, in one query over the publish year index.
+     */
+    @Override
     public Optional<Collection<Book>> getBookBetweenYear(int year1, int year2) {
-
-        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM books" +
-                " WHERE  publish_year BETWEEN ? AND  ? ")) {
-            final Collection books = new ArrayList();
+        List<Book> books = queryBooks(SELECT_BOOKS_WITH_AUTHORS +
+                " WHERE books.publish_year BETWEEN ? AND ?" +
+                " ORDER BY books.publish_year, books.id_book", statement -> {
             statement.setInt(1, year1);
             statement.setInt(2, year2);
-            try (ResultSet cursor = statement.executeQuery()) {
-                if (!cursor.next()) {
-                    return Optional.empty();
-                }
-               // while (cursor.next()) {
-                    Book book = this.createBookFromCursorIfPossible(cursor);
-                    book.author = createAuthorFromBookCursor(cursor);
-                    books.add(book);
-                //}
+        });
+        return books.isEmpty() ? Optional.empty() : Optional.of(books);
+    }
+
+    /**
+     * Returns a page of the books published from {@code year1} to {@code year2}
+     * inclusive, ordered by publish year. The next page starts with an index
+     * seek at the publish year of the last book, so deep pages cost no more than the first.
+     *
+     * @param pageToken The token of the previous page, or {@code null} for the first page.
+     * @throws IllegalArgumentException If the token was issued for another order.
+     */
+    @Override
+    public Page<Book> getPageBetweenYear(int year1, int year2, String pageToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        PageToken after = pageToken == null ? null : PageToken.decode(pageToken, BookSort.PUBLISH_YEAR.name());
+        if (after != null && after.lastKey == null) {
+            throw new IllegalArgumentException("Page token does not belong to a publish year range");
+        }
+        int from = after == null ? year1 : Math.max(year1, Integer.parseInt(after.lastKey));
+
+        List<Book> books = queryBooks(SELECT_BOOKS_WITH_AUTHORS +
+                " WHERE books.publish_year BETWEEN ? AND ?" +
+                (after == null ? "" : " AND (books.publish_year > ? OR books.id_book > ?)") +
+                " ORDER BY books.publish_year, books.id_book LIMIT ?", statement -> {
+            int index = 1;
+            statement.setInt(index++, from);
+            statement.setInt(index++, year2);
+            if (after != null) {
+                statement.setInt(index++, from);
+                statement.setInt(index++, after.lastId);
             }
-            return Optional.of(books);
-        } catch (SQLException e) {
-            throw new RuntimeException(e.getMessage());
+            statement.setInt(index, pageSize + 1);
+        });
+
+        if (books.size() <= pageSize) {
+            return new Page<>(books, null);
         }
+        books.remove(pageSize);
+        Book last = books.get(pageSize - 1);
+        return new Page<>(books, new PageToken(BookSort.PUBLISH_YEAR.name(), last.id,
+                sortKeyOf(BookSort.PUBLISH_YEAR, last)).encode());
     }
 
+    /**
+     * Finds books whose author name contains the text.
+     */
     @Override
     public Optional<Collection<Book>> searchBookByAuthorName(String text) {
+        List<Book> books = queryBooks(SELECT_BOOKS_WITH_AUTHORS +
+                " WHERE authors.name LIKE ?" +
+                " ORDER BY books.id_book", statement -> statement.setString(1, "%" + escapeLike(text) + "%"));
+        return books.isEmpty() ? Optional.empty() : Optional.of(books);
+    }
 
-        final Collection books = new ArrayList();
-        try (Statement statement = connection.createStatement();
-             ResultSet cursor = statement.executeQuery(
-                     "SELECT * FROM books " +
-                             " INNER JOIN authors ON   authors.id_author =  books.author_id" +
-                             " WHERE  authors.name LIKE '%" + text + "%'")) {
+    /**
+     * Finds books by author name or title, best matches first: books whose
+     * author name starts with the text, then books whose title starts with it,
+     * then books containing it anywhere in the author name or the title.
+     * <p>
+     * The prefix matches are range scans of the name and title indexes.
+     * The slower substring query runs only if they found fewer than {@code limit} books.
+     *
+     * @param limit The maximum number of books returned.
+     * @throws IllegalArgumentException If the limit is not positive.
+     */
+    @Override
+    public List<Book> searchBooks(String text, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        String prefix = escapeLike(text) + "%";
+        List<Book> books = new ArrayList<>(queryBooks(SELECT_BOOKS_WITH_AUTHORS +
+                " WHERE authors.name LIKE ?" +
+                " ORDER BY authors.name, books.id_book LIMIT ?", statement -> {
+            statement.setString(1, prefix);
+            statement.setInt(2, limit);
+        }));
+        if (books.size() < limit) {
+            addNewBooks(books, queryBooks(SELECT_BOOKS_WITH_AUTHORS +
+                    " WHERE books.title LIKE ?" +
+                    " ORDER BY books.title, books.id_book LIMIT ?", statement -> {
+                statement.setString(1, prefix);
+                statement.setInt(2, limit);
+            }), limit);
+        }
+        if (books.size() < limit) {
+            String infix = "%" + prefix;
+            addNewBooks(books, queryBooks(SELECT_BOOKS_WITH_AUTHORS +
+                    " WHERE authors.name LIKE ? OR books.title LIKE ?" +
+                    " ORDER BY books.id_book LIMIT ?", statement -> {
+                statement.setString(1, infix);
+                statement.setString(2, infix);
+                statement.setInt(3, limit + books.size());
+            }), limit);
+        }
+        return books;
+    }
 
-            if (!cursor.next()) {
-                return Optional.empty();
+    /**
+     * Appends the found books which are not in the result yet, up to the limit.
+     */
+    private static void addNewBooks(List<Book> books, List<Book> found, int limit) {
+        Set<Integer> ids = new HashSet<>();
+        for (Book book : books) {
+            ids.add(book.id);
+        }
+        for (Book book : found) {
+            if (books.size() >= limit) {
+                return;
             }
-            while (cursor.next()) {
-                Book book = createBookFromCursorIfPossible(cursor);
-                book.author = createAuthorFromBookCursor(cursor);
+            if (ids.add(book.id)) {
                 books.add(book);
             }
+        }
+    }
 
-        } catch (SQLException e) {
-            throw new RuntimeException(e.getMessage());
+    /**
+     * Escapes the LIKE wildcards, so the text is matched literally.
+     */
+    static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
 
+    /**
+     * Runs the query and maps all rows to books with their authors.
+     */
+    private List<Book> queryBooks(String sql, JdbcStreams.ParameterBinder binder) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            binder.bind(statement);
+            List<Book> books = new ArrayList<>();
+            try (ResultSet cursor = statement.executeQuery()) {
+                Map<Integer, Author> authors = new HashMap<>();
+                while (cursor.next()) {
+                    Book book = createBookFromCursorIfPossible(cursor);
+                    book.author = createAuthorFromBookCursor(cursor, authors);
+                    books.add(book);
+                }
+            }
+            return books;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
-        return Optional.of(books);
     }
 
     @Override
     public void printBooks(Collection<Book> books) {
-        if (!books.isEmpty()) {
-            System.out.printf("%-5s | %-20s | %-20s | %-20s | %-20s %n",
-                    "ID", "TITLE", "PUBLISH YEAR", "PAGES COUNT", "AUTHOR");
-            books.stream().forEach(book -> {
-                System.out.printf("%-5d | %-20s | %-20d | %-20d | %-20s",
-                        book.id, book.title, book.publishYear, book.pagesCount, book.author.name);
-                System.out.println();
-            });
-        }
+        printBooks(books.stream());
+    }
+
+    /**
+     * Prints the books as they come, the header is printed before the first one.
+     */
+    @Override
+    public void printBooks(Stream<Book> books) {
+        boolean[] headerPrinted = {false};
+        books.forEach(book -> {
+            if (!headerPrinted[0]) {
+                headerPrinted[0] = true;
+                System.out.printf("%-5s | %-20s | %-20s | %-20s | %-20s %n",
+                        "ID", "TITLE", "PUBLISH YEAR", "PAGES COUNT", "AUTHOR");
+            }
+            System.out.printf("%-5d | %-20s | %-20d | %-20d | %-20s",
+                    book.id, book.title, book.publishYear, book.pagesCount, authorNameOf(book));
+            System.out.println();
+        });
     }
 
     @Override
@@ -264,16 +1030,188 @@ public class JDBCBookRepository implements IBookRepository {
                 "ID", "TITLE", "PUBLISH YEAR", "PAGES COUNT", "AUTHOR");
 
         System.out.printf("%-5d | %-20s | %-15d | %-15d | %-15s | %n",
-                book.id, book.title, book.publishYear, book.pagesCount, book.author.name);
+                book.id, book.title, book.publishYear, book.pagesCount, authorNameOf(book));
+    }
+
+    /**
+     * @return the name of the author, empty for a book without one.
+     */
+    private static String authorNameOf(Book book) {
+        return book.author != null && book.author.name != null ? book.author.name : "";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BookStats getBookStats() {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet cursor = statement.executeQuery("SELECT" + AGGREGATES + " FROM books")) {
+            cursor.next();
+            return createStatsFromCursor(cursor);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Books without an author are not counted. With the summary table enabled
+     * the statistics are read from it instead of being aggregated.
+     */
+    @Override
+    public Stream<AuthorBookStats> streamAuthorStats() {
+        String sql = summaryTableEnabled
+                ? "SELECT authors.id_author, authors.name, stats.book_count, stats.total_pages," +
+                " stats.min_pages, stats.max_pages" +
+                " FROM author_book_stats stats" +
+                " JOIN authors ON authors.id_author = stats.author_id" +
+                " ORDER BY authors.id_author"
+                : "SELECT authors.id_author, authors.name," + AGGREGATES +
+                " FROM books" +
+                " JOIN authors ON authors.id_author = books.author_id" +
+                " GROUP BY authors.id_author, authors.name" +
+                " ORDER BY authors.id_author";
+        return JdbcStreams.query(dataSource, sql, fetchSize, statement -> {
+        }, cursor -> new AuthorBookStats(cursor.getInt("id_author"), cursor.getString("name"),
+                createStatsFromCursor(cursor)));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the width is not positive.
+     */
+    @Override
+    public Stream<YearBucket> streamPublishYearHistogram(int bucketWidth) {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive: " + bucketWidth);
+        }
+        // The width is inlined, so the grouped expression is the same text in SELECT and GROUP BY.
+        String bucket = "FLOOR(books.publish_year / " + bucketWidth + ") * " + bucketWidth;
+        return JdbcStreams.query(dataSource,
+                "SELECT " + bucket + " AS from_year," + AGGREGATES +
+                        " FROM books" +
+                        " WHERE books.publish_year IS NOT NULL" +
+                        " GROUP BY " + bucket +
+                        " ORDER BY from_year", fetchSize, statement -> {
+                }, cursor -> {
+                    int fromYear = cursor.getInt("from_year");
+                    return new YearBucket(fromYear, fromYear + bucketWidth - 1, createStatsFromCursor(cursor));
+                });
+    }
+
+    /**
+     * Recomputes the whole summary table from the books.
+     */
+    public void rebuildSummaryTable() {
+        dataSource.inTransaction(() -> {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM author_book_stats");
+                statement.executeUpdate(INSERT_SUMMARY + " WHERE author_id IS NOT NULL GROUP BY author_id");
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Finds the authors whose statistics change when the books are written:
+     * the authors of the new and changed books and the authors the changed books had before.
+     * Must be called after the authors are saved and before the books are.
+     *
+     * @return the author IDs, empty if the summary table is disabled.
+     */
+    private Set<Integer> affectedAuthorIds(Collection<Book> books) {
+        if (!summaryTableEnabled) {
+            return Collections.emptySet();
+        }
+        Set<Integer> authorIds = new HashSet<>();
+        List<Integer> changedBookIds = new ArrayList<>();
+        for (Book book : books) {
+            boolean inserted = book.id == Book.INVALID_ID;
+            if (!inserted && RowState.changedColumns(book.savedState, stateOf(book)) == 0) {
+                continue;
+            }
+            if (book.author != null) {
+                authorIds.add(book.author.id);
+            }
+            if (!inserted) {
+                changedBookIds.add(book.id);
+            }
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            for (List<Integer> chunk : IdChunks.split(changedBookIds)) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT author_id FROM books" +
+                                " WHERE id_book IN (" + IdChunks.placeholders(chunk.size()) + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet cursor = statement.executeQuery()) {
+                        while (cursor.next()) {
+                            int authorId = cursor.getInt(1);
+                            if (!cursor.wasNull()) {
+                                authorIds.add(authorId);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return authorIds;
+    }
+
+    /**
+     * Recomputes the summary rows of the authors from their books.
+     */
+    private void refreshSummary(Set<Integer> authorIds) {
+        if (authorIds.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            for (List<Integer> chunk : IdChunks.split(authorIds)) {
+                String in = " IN (" + IdChunks.placeholders(chunk.size()) + ")";
+                try (PreparedStatement delete = connection.prepareStatement(
+                        "DELETE FROM author_book_stats WHERE author_id" + in);
+                     PreparedStatement insert = connection.prepareStatement(
+                             INSERT_SUMMARY + " WHERE author_id" + in + " GROUP BY author_id")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        delete.setInt(i + 1, chunk.get(i));
+                        insert.setInt(i + 1, chunk.get(i));
+                    }
+                    delete.executeUpdate();
+                    insert.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static BookStats createStatsFromCursor(ResultSet cursor) throws SQLException {
+        return new BookStats(cursor.getLong("book_count"), cursor.getLong("total_pages"),
+                cursor.getInt("min_pages"), cursor.getInt("max_pages"));
     }
 
     @Override
     public void deleteBooksTable() {
         try {
-            try (Statement statement = connection.createStatement()) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
                 statement.executeUpdate("DROP TABLE IF EXISTS books");
+                statement.executeUpdate("DROP TABLE IF EXISTS author_book_stats");
+                if (JdbcSchema.hasColumn(connection, "tombstones", "row_version")) {
+                    statement.executeUpdate("DELETE FROM tombstones WHERE table_name = 'books'");
+                }
             }
-        } catch (SQLException e) {
+            new SchemaMigrator(dataSource).reset();
+        } catch (SQLException | RuntimeException e) {
             System.out.println("Не удалось удалить таблицу книг");
         }
     }
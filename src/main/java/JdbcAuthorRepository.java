@@ -1,41 +1,88 @@
+import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
 
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 
 public class JdbcAuthorRepository implements IAuthorRepository {
-    private final Connection connection;
+    /**
+     * The updatable columns, in the order of {@link #stateOf(Author)}.
+     */
+    private static final String[] COLUMNS = {"name", "birth_year"};
+
+    private final TransactionalDataSource dataSource;
+    private int batchSize = 1000;
+    private int fetchSize;
+    private int conflictRetries;
 
     /**
      * Creates an instance of the class.
      *
-     * @param connection The opened and prepared connection.
+     * @param dataSource The source of connections, one is borrowed per operation.
+     */
+    public JdbcAuthorRepository(DataSource dataSource) {
+        this.dataSource = TransactionalDataSource.of(dataSource);
+    }
+
+    /**
+     * Sets how many rows {@link #saveAll(Collection)} sends to the database in one batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the fetch size used by {@link #stream()}. The default 0 leaves it to the driver,
+     * {@link Integer#MIN_VALUE} makes MySQL stream rows one by one.
      */
-    public JdbcAuthorRepository(Connection connection) {
-        this.connection = connection;
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
     }
 
     /**
-     * Initializes required tables if needed.
+     * Sets how many times a save which hit an {@link OptimisticLockException} is repeated,
+     * 0 by default. Before a repeat the conflicting authors are loaded again and keep
+     * the columns changed by the caller, see {@link #reapply(Author, Author)}.
+     * Saves inside a transaction of the caller are not repeated, the whole transaction must be.
+     */
+    public void setConflictRetries(int conflictRetries) {
+        if (conflictRetries < 0) {
+            throw new IllegalArgumentException("Conflict retries must not be negative: " + conflictRetries);
+        }
+        this.conflictRetries = conflictRetries;
+    }
+
+    /**
+     * Creates or upgrades the tables and indexes, see {@link SchemaMigrator}.
      */
     public void initialize() {
-        try (Statement statement = connection.createStatement()) {
-            statement.executeUpdate("CREATE TABLE IF NOT EXISTS authors(" +
-                    " id_author INTEGER PRIMARY KEY AUTO_INCREMENT, " +
-                    " name VARCHAR(200), " +
-                    " birth_year INTEGER" +
-                    ")");
-        } catch (SQLException e) {
-            System.out.println("Не удалось создать таблицу для авторов");
-            ;
+        try {
+            new SchemaMigrator(dataSource).migrate();
+        } catch (RuntimeException e) {
+            System.out.println("Не удалось создать таблицу для авторов: " + e.getMessage());
         }
     }
 
     @Override
     public Collection<Author> getAll() {
-        try (Statement statement = connection.createStatement();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
              ResultSet cursor = statement.executeQuery("SELECT * FROM authors")) {
             Collection<Author> authors = new ArrayList<>();
             while (cursor.next()) {
@@ -49,6 +96,112 @@ public class JdbcAuthorRepository implements IAuthorRepository {
 
     }
 
+    /**
+     * Streams all authors without loading them into memory at once.
+     * The stream holds a connection until it is closed.
+     */
+    @Override
+    public Stream<Author> stream() {
+        return JdbcStreams.query(dataSource, "SELECT * FROM authors", fetchSize,
+                statement -> {
+                }, this::createAuthorFromCursorIfPossible);
+    }
+
+    /**
+     * Streams the deletions after the version, then the authors written after it,
+     * each in version order. An ID deleted and used again by a later author ends
+     * up present. {@code changesSince(0)} returns every author.
+     * <p>
+     * Only the versions committed when this method is called are read, so
+     * continuing from the highest version returned misses no change.
+     * The stream must be closed.
+     */
+    @Override
+    public Stream<Change<Author>> changesSince(long version) {
+        long upTo = RowVersions.current(dataSource);
+        List<Change<Author>> deletions = RowVersions.tombstonesSince(dataSource, "authors", version, upTo);
+        return Stream.concat(deletions.stream(), JdbcStreams.query(dataSource,
+                "SELECT * FROM authors WHERE row_version > ? AND row_version <= ?" +
+                        " ORDER BY row_version, id_author", fetchSize, statement -> {
+                    statement.setLong(1, version);
+                    statement.setLong(2, upTo);
+                }, cursor -> new Change<>(cursor.getLong("row_version"), cursor.getInt("id_author"),
+                        createAuthorFromCursorIfPossible(cursor))));
+    }
+
+    @Override
+    public void forEach(Consumer<Author> action) {
+        try (Stream<Author> authors = stream()) {
+            authors.forEach(action);
+        }
+    }
+
+    /**
+     * Loads the authors with the given IDs in chunked {@code IN} queries.
+     *
+     * @return the found authors by ID; missing IDs are absent.
+     */
+    @Override
+    public Map<Integer, Author> getByIds(Collection<Integer> ids) {
+        Map<Integer, Author> authors = new HashMap<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (List<Integer> chunk : IdChunks.split(ids)) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT * FROM authors WHERE id_author IN (" + IdChunks.placeholders(chunk.size()) + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet cursor = statement.executeQuery()) {
+                        while (cursor.next()) {
+                            Author author = createAuthorFromCursorIfPossible(cursor);
+                            authors.put(author.id, author);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return authors;
+    }
+
+    /**
+     * Returns a page of authors ordered by ID.
+     * The page is found by a primary key seek after the last author of the previous page.
+     *
+     * @param pageToken The token of the previous page, or {@code null} for the first page.
+     * @param pageSize  The maximum number of authors on the page.
+     */
+    @Override
+    public Page<Author> getPage(String pageToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        PageToken after = pageToken == null ? null : PageToken.decode(pageToken, "ID");
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT * FROM authors WHERE id_author > ? ORDER BY id_author LIMIT ?")) {
+            statement.setInt(1, after == null ? Integer.MIN_VALUE : after.lastId);
+            statement.setInt(2, pageSize + 1);
+
+            List<Author> authors = new ArrayList<>();
+            try (ResultSet cursor = statement.executeQuery()) {
+                while (cursor.next()) {
+                    authors.add(createAuthorFromCursorIfPossible(cursor));
+                }
+            }
+
+            if (authors.size() <= pageSize) {
+                return new Page<>(authors, null);
+            }
+            authors.remove(pageSize);
+            return new Page<>(authors, new PageToken("ID", authors.get(pageSize - 1).id, null).encode());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * @return found author.
      * @throws RuntimeException If no author is found for given ID.
@@ -56,8 +209,9 @@ public class JdbcAuthorRepository implements IAuthorRepository {
     @Override
     public Optional<Author> getById(int id) {
         final Author author;
-        try (PreparedStatement statement = connection.prepareStatement(
-                "SELECT * FROM authors WHERE id_author = ?")) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT * FROM authors WHERE id_author = ?")) {
             statement.setInt(1, id);
             try (ResultSet cursor = statement.executeQuery()) {
                 if (!cursor.next()) {
@@ -75,13 +229,206 @@ public class JdbcAuthorRepository implements IAuthorRepository {
 
     /**
      * Saves the author by updating existing one or inserting new one.
+     * An author loaded by a repository is updated only if it was changed since,
+     * and only in the changed columns.
+     *
+     * @throws OptimisticLockException If the author was changed by someone else since it was loaded.
      */
     @Override
     public void save(Author author) {
-        if (author.id != Author.INVALID_ID) {
-            updateAuthor(author);
-        } else {
-            insertAuthor(author);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                dataSource.inTransaction(() -> {
+                    if (author.id != Author.INVALID_ID) {
+                        updateAuthor(author);
+                    } else {
+                        insertAuthor(author);
+                    }
+                });
+                return;
+            } catch (OptimisticLockException e) {
+                if (attempt >= conflictRetries || dataSource.isInTransaction()
+                        || !reload(Collections.singletonList(author), e.id)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves all authors in one transaction, sending inserts and updates in batches.
+     * An author instance present several times is written once.
+     * Generated IDs are set to the inserted authors, and taken back if the transaction is rolled back.
+     *
+     * @throws OptimisticLockException If an author was changed by someone else since it was loaded.
+     */
+    @Override
+    public void saveAll(Collection<Author> authors) {
+        Set<Author> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Author> inserts = new ArrayList<>();
+        List<Author> updates = new ArrayList<>();
+        for (Author author : authors) {
+            if (author != null && unique.add(author)) {
+                (author.id != Author.INVALID_ID ? updates : inserts).add(author);
+            }
+        }
+        if (unique.isEmpty()) {
+            return;
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                dataSource.inTransaction(() -> {
+                    insertAuthors(inserts);
+                    updateAuthors(updates);
+                });
+                return;
+            } catch (OptimisticLockException e) {
+                if (attempt >= conflictRetries || dataSource.isInTransaction() || !reload(updates, e.id)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the author with the ID again and reapplies the changes of the given authors with that ID.
+     *
+     * @return false if the author is gone or was changed in the same columns.
+     */
+    private boolean reload(Collection<Author> authors, int id) {
+        Optional<Author> current = getById(id);
+        if (!current.isPresent()) {
+            return false;
+        }
+        boolean found = false;
+        for (Author author : authors) {
+            if (author.id == id) {
+                if (!reapply(author, current.get())) {
+                    return false;
+                }
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Moves the changes made to the author since it was loaded onto the current row:
+     * the author takes the current values of the columns it did not change, and the
+     * current version, so saving it again keeps the changes of both writers.
+     *
+     * @param current The author as just loaded.
+     * @return false, leaving the author as is, if its changes are unknown or the same columns were changed.
+     */
+    static boolean reapply(Author author, Author current) {
+        if (author.savedState == null) {
+            return false;
+        }
+        int changed = RowState.changedColumns(author.savedState, stateOf(author));
+        if ((changed & RowState.changedColumns(author.savedState, current.savedState)) != 0) {
+            return false;
+        }
+        // the bits are in the order of COLUMNS
+        if ((changed & 1) == 0) {
+            author.name = current.name;
+        }
+        if ((changed & 1 << 1) == 0) {
+            author.birthYear = current.birthYear;
+        }
+        author.savedState = current.savedState;
+        author.version = current.version;
+        return true;
+    }
+
+    private void insertAuthors(List<Author> authors) {
+        if (authors.isEmpty()) {
+            return;
+        }
+        long version = RowVersions.pending(dataSource);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO" +
+                             " authors(name, birth_year, row_version)" +
+                             " VALUES(?, ?, ?)", RETURN_GENERATED_KEYS)) {
+
+            for (int from = 0; from < authors.size(); from += batchSize) {
+                List<Author> batch = authors.subList(from, Math.min(from + batchSize, authors.size()));
+                for (Author author : batch) {
+                    statement.setString(1, author.name);
+                    statement.setInt(2, author.birthYear);
+                    statement.setLong(3, version);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                try (ResultSet cursor = statement.getGeneratedKeys()) {
+                    for (Author author : batch) {
+                        if (!cursor.next()) {
+                            throw new RuntimeException("Failed to get generated key for a author");
+                        }
+                        setGeneratedId(author, cursor.getInt(1));
+                        markSaved(author);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Updates the changed authors, one batch per set of changed columns
+     * and per whether their version is known.
+     */
+    private void updateAuthors(List<Author> authors) {
+        // the changed columns shifted left, with the lowest bit set if the version is checked
+        Map<Long, List<Author>> byChangedColumns = new LinkedHashMap<>();
+        for (Author author : authors) {
+            int changed = RowState.changedColumns(author.savedState, stateOf(author));
+            if (changed != 0) {
+                long key = (long) changed << 1 | (author.version != 0 ? 1 : 0);
+                byChangedColumns.computeIfAbsent(key, k -> new ArrayList<>()).add(author);
+            }
+        }
+
+        if (byChangedColumns.isEmpty()) {
+            return;
+        }
+        long version = RowVersions.pending(dataSource);
+        for (Map.Entry<Long, List<Author>> group : byChangedColumns.entrySet()) {
+            int changed = (int) (group.getKey() >> 1);
+            boolean checkVersion = (group.getKey() & 1) != 0;
+            List<Author> changedAuthors = group.getValue();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(
+                         RowState.updateSql("authors", COLUMNS, changed, "id_author", checkVersion))) {
+
+                for (int from = 0; from < changedAuthors.size(); from += batchSize) {
+                    List<Author> batch = changedAuthors.subList(from, Math.min(from + batchSize, changedAuthors.size()));
+                    for (Author author : batch) {
+                        RowState state = stateOf(author);
+                        int index = state.bindChanged(statement, changed);
+                        statement.setLong(index++, version);
+                        statement.setInt(index++, author.id);
+                        if (checkVersion) {
+                            statement.setLong(index, author.version);
+                        }
+                        statement.addBatch();
+                    }
+                    int[] counts = statement.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            throw updateFailed(batch.get(i));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            for (Author author : changedAuthors) {
+                markSaved(author);
+            }
         }
     }
 
@@ -89,18 +436,22 @@ public class JdbcAuthorRepository implements IAuthorRepository {
      * Inserts new record of author.
      */
     private void insertAuthor(Author author) {
-        try (PreparedStatement statement = connection.prepareStatement(
-                "INSERT INTO" +
-                        " authors(name, birth_year)" +
-                        " VALUES(?, ?)", RETURN_GENERATED_KEYS)) {
+        long version = RowVersions.pending(dataSource);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO" +
+                             " authors(name, birth_year, row_version)" +
+                             " VALUES(?, ?, ?)", RETURN_GENERATED_KEYS)) {
 
             statement.setString(1, author.name);
             statement.setInt(2, author.birthYear);
+            statement.setLong(3, version);
 
             if (statement.executeUpdate() > 0) {
                 try (ResultSet cursor = statement.getGeneratedKeys()) {
                     if (cursor.next()) {
-                        author.id = cursor.getInt(1);
+                        setGeneratedId(author, cursor.getInt(1));
+                        markSaved(author);
                     } else {
                         throw new RuntimeException("Failed to get generated key for a author");
                     }
@@ -114,44 +465,125 @@ public class JdbcAuthorRepository implements IAuthorRepository {
     }
 
     /**
-     * Updates an existing record by using its primary key.
+     * Updates the changed columns of an existing record by using its primary key,
+     * if it still has the version the author was loaded with.
      */
     private void updateAuthor(Author author) {
-        try (PreparedStatement statement = connection.prepareStatement(
-                "UPDATE authors" +
-                        " SET name = ?, birth_year = ?" +
-                        " WHERE id_author = ?")) {
+        RowState state = stateOf(author);
+        int changed = RowState.changedColumns(author.savedState, state);
+        if (changed == 0) {
+            return;
+        }
+        boolean checkVersion = author.version != 0;
+        long version = RowVersions.pending(dataSource);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     RowState.updateSql("authors", COLUMNS, changed, "id_author", checkVersion))) {
 
-            statement.setString(1, author.name);
-            statement.setInt(2, author.birthYear);
-            statement.setInt(3, author.id);
+            int index = state.bindChanged(statement, changed);
+            statement.setLong(index++, version);
+            statement.setInt(index++, author.id);
+            if (checkVersion) {
+                statement.setLong(index, author.version);
+            }
 
             if (statement.executeUpdate() == 0) {
-                throw new RuntimeException("Failed to update a author record");
+                throw updateFailed(author);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        markSaved(author);
     }
 
+    /**
+     * @return a conflict if the update was checked against the version of the author.
+     */
+    private static RuntimeException updateFailed(Author author) {
+        return author.version != 0
+                ? new OptimisticLockException("authors", author.id, author.version)
+                : new RuntimeException("Failed to update a author record");
+    }
 
+    static RowState stateOf(Author author) {
+        return new RowState(author.name, author.birthYear);
+    }
+
+    /**
+     * Sets the generated ID to the inserted author. The previous ID is set back if the insert is rolled back.
+     */
+    private void setGeneratedId(Author author, int id) {
+        int previousId = author.id;
+        author.id = id;
+        dataSource.afterRollback(() -> author.id = previousId);
+    }
+
+    /**
+     * Remembers the current values and the version as saved once the transaction commits.
+     */
+    private void markSaved(Author author) {
+        RowState state = stateOf(author);
+        LongSupplier version = RowVersions.written(dataSource, "authors", "id_author", author.id);
+        dataSource.afterCommit(() -> {
+            author.savedState = state;
+            author.version = version.getAsLong();
+        });
+    }
+
+
+    /**
+     * @throws IllegalArgumentException If there is no author with the ID.
+     * @throws IllegalStateException    If the author still has books.
+     */
     @Override
     public void deleteById(int id) {
-        try (PreparedStatement statement1 = connection.prepareStatement("SELECT (1) from authors  WHERE id_author = ?")) {
-            statement1.setInt(1, id);
-            if (statement1.executeQuery().next()) {
-                try (PreparedStatement statement =
-                             connection.prepareStatement("DELETE FROM authors WHERE id_author = ? ")) {
-                    statement.setInt(1, id);
-                    statement.executeUpdate();
-                }
-            } else System.out.println("Автора с таким id нет");
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-
+        deleteAllById(Collections.singletonList(id));
     }
 
+    /**
+     * Checks that all the authors exist, then deletes them with one statement per chunk of IDs.
+     */
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        dataSource.inTransaction(() -> {
+            try (Connection connection = dataSource.getConnection()) {
+                Set<Integer> found = new HashSet<>();
+                for (List<Integer> chunk : IdChunks.split(ids)) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "SELECT id_author FROM authors WHERE id_author IN (" +
+                                    IdChunks.placeholders(chunk.size()) + ")")) {
+                        IdChunks.setIds(statement, chunk);
+                        try (ResultSet cursor = statement.executeQuery()) {
+                            while (cursor.next()) {
+                                found.add(cursor.getInt(1));
+                            }
+                        }
+                    }
+                }
+                List<Integer> missing = IdChunks.missing(ids, found);
+                if (!missing.isEmpty()) {
+                    throw new IllegalArgumentException(missing.size() == 1
+                            ? "Автора с id " + missing.get(0) + " нет"
+                            : "Авторов с id " + missing + " нет");
+                }
+                for (List<Integer> chunk : IdChunks.split(found)) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "DELETE FROM authors WHERE id_author IN (" + IdChunks.placeholders(chunk.size()) + ")")) {
+                        IdChunks.setIds(statement, chunk);
+                        statement.executeUpdate();
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        throw new IllegalStateException("У автора есть книги, сначала удалите их", e);
+                    }
+                }
+                RowVersions.tombstones(dataSource, connection, "authors", found);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
 
     private Author createAuthorFromCursorIfPossible(ResultSet cursor) throws SQLException {
         final Author author = new Author();
@@ -159,23 +591,35 @@ public class JdbcAuthorRepository implements IAuthorRepository {
         author.id = cursor.getInt("id_author");
         author.name = cursor.getString("name");
         author.birthYear = cursor.getInt("birth_year");
+        author.version = cursor.getLong("row_version");
+        author.savedState = stateOf(author);
 
         return author;
     }
 
     @Override
     public void printAuthors(Collection<Author> authors) {
-        if (!authors.isEmpty()) {
-            System.out.println("------------------------------------------");
-            System.out.printf("%-5s | %-20s | %-20s %n",
-                    "ID", "NAME", "BIRTH YEAR");
-            System.out.println("------------------------------------------");
-            authors.stream().forEach(author -> {
-                System.out.printf("%-5d | %-20s | %-20d %n",
-                        author.id, author.name, author.birthYear);
+        printAuthors(authors.stream());
+    }
+
+    /**
+     * Prints the authors as they come, the header is printed before the first one.
+     */
+    @Override
+    public void printAuthors(Stream<Author> authors) {
+        boolean[] headerPrinted = {false};
+        authors.forEach(author -> {
+            if (!headerPrinted[0]) {
+                headerPrinted[0] = true;
                 System.out.println("------------------------------------------");
-            });
-        }
+                System.out.printf("%-5s | %-20s | %-20s %n",
+                        "ID", "NAME", "BIRTH YEAR");
+                System.out.println("------------------------------------------");
+            }
+            System.out.printf("%-5d | %-20s | %-20d %n",
+                    author.id, author.name, author.birthYear);
+            System.out.println("------------------------------------------");
+        });
     }
 
     @Override
@@ -192,11 +636,31 @@ public class JdbcAuthorRepository implements IAuthorRepository {
     @Override
     public void deleteAuthorsTable() {
         try {
-            try (Statement statement = connection.createStatement()) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
 
+                if (JdbcSchema.hasColumn(connection, "books", "author_id")) {
+                    try (ResultSet cursor = statement.executeQuery(
+                            "SELECT COUNT(*) FROM books WHERE author_id IS NOT NULL")) {
+                        cursor.next();
+                        if (cursor.getLong(1) > 0) {
+                            System.out.println("Не удалось удалить таблицу авторов: на авторов ссылаются книги," +
+                                    " сначала удалите таблицу книг");
+                            return;
+                        }
+                    }
+                    // the migrations add the key again when the table is created
+                    if (JdbcSchema.hasForeignKey(connection, "books", "fk_books_author")) {
+                        statement.executeUpdate("ALTER TABLE books DROP FOREIGN KEY fk_books_author");
+                    }
+                }
                 statement.executeUpdate("DROP TABLE IF EXISTS authors");
+                if (JdbcSchema.hasColumn(connection, "tombstones", "row_version")) {
+                    statement.executeUpdate("DELETE FROM tombstones WHERE table_name = 'authors'");
+                }
             }
-        } catch (SQLException e) {
+            new SchemaMigrator(dataSource).reset();
+        } catch (SQLException | RuntimeException e) {
             System.out.println("Не удалось удалить таблицу авторов");
         }
 
@@ -0,0 +1,91 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Schema changes which MySQL cannot express with {@code IF NOT EXISTS}.
+ */
+final class JdbcSchema {
+
+    private JdbcSchema() {
+    }
+
+    /**
+     * Creates the index unless the table already has an index with this name.
+     *
+     * @param columns The indexed columns, comma-separated.
+     */
+    static void createIndexIfMissing(Connection connection, String table, String index,
+                                     String columns) throws SQLException {
+        if (hasIndex(connection, table, index)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE INDEX " + index + " ON " + table + "(" + columns + ")");
+        }
+    }
+
+    static boolean hasIndex(Connection connection, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet cursor = metaData.getIndexInfo(connection.getCatalog(), null,
+                identifier(metaData, table), false, true)) {
+            while (cursor.next()) {
+                if (index.equalsIgnoreCase(cursor.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean hasForeignKey(Connection connection, String table, String foreignKey) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet cursor = metaData.getImportedKeys(connection.getCatalog(), null,
+                identifier(metaData, table))) {
+            while (cursor.next()) {
+                if (foreignKey.equalsIgnoreCase(cursor.getString("FK_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet cursor = metaData.getColumns(connection.getCatalog(), null,
+                identifier(metaData, table), identifier(metaData, column))) {
+            return cursor.next();
+        }
+    }
+
+    /**
+     * Adds the column unless the table already has it.
+     *
+     * @param definition The type and constraints of the column.
+     */
+    static void addColumnIfMissing(Connection connection, String table, String column,
+                                   String definition) throws SQLException {
+        if (hasColumn(connection, table, column)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    /**
+     * Converts an identifier to the case the database stores it in, for metadata lookups.
+     */
+    static String identifier(DatabaseMetaData metaData, String name) throws SQLException {
+        if (metaData.storesUpperCaseIdentifiers()) {
+            return name.toUpperCase();
+        }
+        if (metaData.storesLowerCaseIdentifiers()) {
+            return name.toLowerCase();
+        }
+        return name;
+    }
+}
@@ -0,0 +1,119 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Turns an open {@link ResultSet} into a lazily mapped {@link Stream}.
+ */
+final class JdbcStreams {
+
+    /**
+     * Maps the row at the cursor position to an object.
+     */
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet cursor) throws SQLException;
+    }
+
+    /**
+     * Sets the parameters of a prepared statement.
+     */
+    @FunctionalInterface
+    interface ParameterBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private JdbcStreams() {
+    }
+
+    /**
+     * Runs the query on a connection borrowed from the data source and streams its rows.
+     *
+     * @param fetchSize The fetch size hint, 0 leaves it to the driver. {@link Integer#MIN_VALUE}
+     *                  makes MySQL send the rows one by one instead of buffering the whole result.
+     */
+    static <T> Stream<T> query(DataSource dataSource, String sql, int fetchSize,
+                               ParameterBinder binder, RowMapper<T> mapper) {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet cursor = null;
+        try {
+            connection = dataSource.getConnection();
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            binder.bind(statement);
+            cursor = statement.executeQuery();
+            return stream(connection, statement, cursor, mapper);
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(connection, statement, cursor);
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates a stream which reads one row per element. Closing the stream
+     * closes the cursor, the statement and the connection, so the stream
+     * must be used in a try-with-resources block.
+     */
+    static <T> Stream<T> stream(Connection connection, Statement statement, ResultSet cursor,
+                                RowMapper<T> mapper) {
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(cursor));
+                    return true;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> close(cursor, statement, connection));
+    }
+
+    /**
+     * Closes all the resources in the given order, even if closing one fails.
+     *
+     * @throws RuntimeException With the first failure, the later ones suppressed.
+     */
+    private static void close(AutoCloseable... resources) {
+        RuntimeException failure = null;
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = new RuntimeException(e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (int i = resources.length - 1; i >= 0; i--) {
+            if (resources[i] != null) {
+                try {
+                    resources[i].close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+}
@@ -1,35 +1,373 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.nio.file.StandardOpenOption;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 
 public class Main {
     public static void main(String[] args) {
         Scanner scan = new Scanner(System.in);
-        try (Connection connection = getConnection()) {
-            JdbcAuthorRepository authorRepository = new JdbcAuthorRepository(connection);
-            JDBCBookRepository bookRepository = new JDBCBookRepository(connection, authorRepository);
-            Menu.start(scan, bookRepository, authorRepository);
-        } catch (SQLException | IOException e) {
+        boolean failed = false;
+        try {
+            Properties properties = loadProperties();
+            try (ConnectionPool pool = createConnectionPool(properties);
+                 ReplicaRoutingDataSource routing = createReplicaRouting(pool, properties);
+                 RepositoryMetrics metrics = createMetrics(properties);
+                 SlowQueryLog slowQueryLog = createSlowQueryLog(pool, properties)) {
+                ObservedDataSource observedDataSource = new ObservedDataSource(routing != null ? routing : pool);
+                if (metrics != null) {
+                    observedDataSource.addListener(metrics);
+                }
+                if (slowQueryLog != null) {
+                    observedDataSource.addListener(slowQueryLog);
+                }
+                TransactionalDataSource dataSource = new TransactionalDataSource(observedDataSource);
+                BookSnapshot snapshot = Boolean.parseBoolean(properties.getProperty("snapshot.enabled", "false"))
+                        ? new BookSnapshot()
+                        : null;
+                IAuthorRepository cachedAuthorRepository = createAuthorRepository(dataSource, routing, snapshot,
+                        properties);
+                IAuthorRepository authorRepository = metrics != null
+                        ? new InstrumentedAuthorRepository(cachedAuthorRepository, metrics)
+                        : cachedAuthorRepository;
+                IBookRepository bookRepository = createBookRepository(dataSource, routing, snapshot, authorRepository,
+                        properties, metrics);
+                SnapshotRefresher refresher = createSnapshotRefresher(snapshot, bookRepository, authorRepository,
+                        properties);
+                try {
+                    if (args.length == 2 && args[0].equals("--import")) {
+                        bookRepository.initialize();
+                        authorRepository.initialize();
+                        createImporter(dataSource, bookRepository, authorRepository, properties)
+                                .importFile(Paths.get(args[1]));
+                    } else if ((args.length == 2 || args.length == 4) && args[0].equals("--export")) {
+                        bookRepository.initialize();
+                        authorRepository.initialize();
+                        export(bookRepository, args);
+                    } else if ((args.length == 2 || args.length == 3) && args[0].equals("--exec")) {
+                        bookRepository.initialize();
+                        authorRepository.initialize();
+                        failed = execute(createScriptRunner(dataSource, bookRepository, authorRepository,
+                                properties), args) > 0;
+                    } else {
+                        Menu.start(scan, bookRepository, authorRepository);
+                    }
+                } finally {
+                    if (refresher != null) {
+                        refresher.close();
+                    }
+                }
+                System.out.println("Пул соединений: " + pool);
+                if (routing != null) {
+                    System.out.println("Реплики: " + routing);
+                }
+                if (cachedAuthorRepository instanceof CachingAuthorRepository) {
+                    System.out.println("Кэш авторов: " + cachedAuthorRepository);
+                }
+                if (snapshot != null) {
+                    System.out.println("Снимок в памяти: " + snapshot);
+                }
+                if (metrics != null) {
+                    System.out.print("Метрики репозиториев:\n" + metrics.getReport());
+                }
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
             System.err.println("Failed: " + e.getMessage());
+            failed = true;
         }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates the connection pool configured by {@code database.properties}
+     * and checks that it can connect.
+     *
+     * @throws SQLException If no connection could be opened; the pool is closed then.
+     */
+    public final static ConnectionPool createConnectionPool(Properties properties) throws SQLException {
+        ConnectionPool pool = ConnectionPool.fromProperties(properties);
+        try {
+            pool.getConnection().close();
+        } catch (SQLException | RuntimeException e) {
+            pool.close();
+            throw e;
+        }
+        System.out.println("Подключение успешно");
+        return pool;
+    }
+
+    /**
+     * Creates the routing of reads to replicas if {@code replicas.urls} lists their URLs,
+     * separated by commas. The replicas are pooled like the primary and connect as
+     * {@code replicas.username} and {@code replicas.password}, by default as the primary does.
+     * A replica is chosen by {@code replicas.balance}, {@code ROUND_ROBIN} or {@code LEAST_LOADED},
+     * and checked every {@code replicas.healthCheckInterval} milliseconds, 5000 by default.
+     * Reads go to the primary for {@code replicas.stickiness} milliseconds after a write, 1000 by default.
+     *
+     * @return the routing, or {@code null} if there are no replicas.
+     */
+    public final static ReplicaRoutingDataSource createReplicaRouting(ConnectionPool primary,
+                                                                      Properties properties) {
+        String urls = properties.getProperty("replicas.urls", "").trim();
+        if (urls.isEmpty()) {
+            return null;
+        }
+        List<ConnectionPool> replicas = new ArrayList<>();
+        for (String url : urls.split("\\s*,\\s*")) {
+            Properties replicaProperties = new Properties();
+            replicaProperties.putAll(properties);
+            replicaProperties.setProperty("url", url);
+            replicaProperties.setProperty("username",
+                    properties.getProperty("replicas.username", properties.getProperty("username", "")));
+            replicaProperties.setProperty("password",
+                    properties.getProperty("replicas.password", properties.getProperty("password", "")));
+            replicas.add(ConnectionPool.fromProperties(replicaProperties));
+        }
+        return new ReplicaRoutingDataSource(primary, replicas,
+                ReplicaRoutingDataSource.Balance.valueOf(properties.getProperty("replicas.balance", "ROUND_ROBIN")),
+                Long.parseLong(properties.getProperty("replicas.stickiness", "1000")),
+                Long.parseLong(properties.getProperty("replicas.healthCheckInterval", "5000")),
+                Integer.parseInt(properties.getProperty("pool.validationTimeout", "5")));
+    }
+
+    /**
+     * Creates the repository metrics if {@code metrics.enabled} is true, and registers them
+     * in JMX. If {@code metrics.dumpInterval} is positive, they are printed every that many
+     * milliseconds, as JSON lines if {@code metrics.dumpFormat} is {@code json}.
+     *
+     * @return the metrics, or {@code null} if they are disabled.
+     */
+    public final static RepositoryMetrics createMetrics(Properties properties) {
+        if (!Boolean.parseBoolean(properties.getProperty("metrics.enabled", "false"))) {
+            return null;
+        }
+        RepositoryMetrics metrics = new RepositoryMetrics();
+        metrics.registerMBean("library");
+        long dumpInterval = Long.parseLong(properties.getProperty("metrics.dumpInterval", "0"));
+        if (dumpInterval > 0) {
+            metrics.startReporting(dumpInterval, "json".equals(properties.getProperty("metrics.dumpFormat")),
+                    System.out);
+        }
+        return metrics;
+    }
+
+    /**
+     * Creates the slow-query log if {@code slowQuery.threshold} is set, in milliseconds.
+     * The log is appended to {@code slowQuery.file}, {@code slow-queries.log} by default,
+     * with up to {@code slowQuery.queueSize} entries waiting to be written.
+     * If {@code slowQuery.explain} is true, the plan of every distinct slow statement is logged once.
+     *
+     * @return the log, or {@code null} if it is disabled.
+     */
+    public final static SlowQueryLog createSlowQueryLog(ConnectionPool pool, Properties properties)
+            throws IOException {
+        String threshold = properties.getProperty("slowQuery.threshold");
+        if (threshold == null) {
+            return null;
+        }
+        Writer out = Files.newBufferedWriter(Paths.get(properties.getProperty("slowQuery.file", "slow-queries.log")),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        SlowQueryLog log = new SlowQueryLog(Long.parseLong(threshold),
+                Integer.parseInt(properties.getProperty("slowQuery.queueSize", "1000")), out);
+        if (Boolean.parseBoolean(properties.getProperty("slowQuery.explain", "false"))) {
+            log.setExplainSource(pool);
+        }
+        return log;
+    }
+
+    /**
+     * Starts refreshing the snapshot from the repositories every {@code snapshot.refreshInterval}
+     * milliseconds, 60000 by default, so it sees the changes of other writers and its
+     * string pool does not keep growing with the saves applied to it.
+     *
+     * @param snapshot The in-memory copy of the tables, or {@code null}.
+     * @return the refresher, or {@code null} if there is no snapshot or the interval is not positive.
+     */
+    public final static SnapshotRefresher createSnapshotRefresher(BookSnapshot snapshot,
+                                                                  IBookRepository bookRepository,
+                                                                  IAuthorRepository authorRepository,
+                                                                  Properties properties) {
+        long interval = Long.parseLong(properties.getProperty("snapshot.refreshInterval", "60000"));
+        if (snapshot == null || interval <= 0) {
+            return null;
+        }
+        SnapshotRefresher refresher = new SnapshotRefresher(snapshot, bookRepository, authorRepository);
+        refresher.start(interval);
+        return refresher;
+    }
+
+    /**
+     * @return the fetch size of {@code stream.fetchSize}, by default {@link Integer#MIN_VALUE}
+     * for MySQL, which then streams rows one by one, and 0 for other databases.
+     */
+    public final static int fetchSizeOf(Properties properties) {
+        String fetchSize = properties.getProperty("stream.fetchSize");
+        if (fetchSize != null) {
+            return Integer.parseInt(fetchSize);
+        }
+        return properties.getProperty("url", "").startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : 0;
     }
 
-    public final static Connection getConnection() throws SQLException, IOException {
+    /**
+     * Creates the author repository, cached if {@code cache.authors.maxSize} is positive.
+     * The cache keeps authors for {@code cache.authors.ttl} milliseconds.
+     * With a snapshot the authors are read from it and not cached.
+     * A save which conflicts with another writer is repeated {@code optimisticLock.retries} times.
+     * Streams use the fetch size of {@link #fetchSizeOf(Properties)}.
+     *
+     * @param routing  The routing of reads to replicas, or {@code null}.
+     * @param snapshot The in-memory copy of the tables to read from, or {@code null}.
+     */
+    public final static IAuthorRepository createAuthorRepository(TransactionalDataSource dataSource,
+                                                                 ReplicaRoutingDataSource routing,
+                                                                 BookSnapshot snapshot,
+                                                                 Properties properties) {
+        JdbcAuthorRepository jdbcRepository = new JdbcAuthorRepository(dataSource);
+        jdbcRepository.setFetchSize(fetchSizeOf(properties));
+        jdbcRepository.setConflictRetries(Integer.parseInt(properties.getProperty("optimisticLock.retries", "0")));
+        IAuthorRepository repository = jdbcRepository;
+        if (routing != null) {
+            repository = new ReplicaRoutingAuthorRepository(repository, routing);
+        }
+        if (snapshot != null) {
+            return new SnapshotAuthorRepository(repository, dataSource, snapshot);
+        }
+        int cacheSize = Integer.parseInt(properties.getProperty("cache.authors.maxSize", "10000"));
+        if (cacheSize > 0) {
+            long ttl = Long.parseLong(properties.getProperty("cache.authors.ttl", "600000"));
+            repository = new CachingAuthorRepository(repository, dataSource, cacheSize, ttl);
+        }
+        return repository;
+    }
+
+    /**
+     * Creates the book repository. If {@code search.inMemoryIndex} is true,
+     * searches are answered by an in-memory index of all books.
+     * If {@code analytics.summaryTable} is true, per-author statistics are kept in a table.
+     * A save which conflicts with another writer is repeated {@code optimisticLock.retries} times.
+     * Streams use the fetch size of {@link #fetchSizeOf(Properties)}.
+     *
+     * @param routing  The routing of reads to replicas, or {@code null}.
+     * @param snapshot The in-memory copy of the tables to read from, or {@code null}.
+     * @param metrics  The metrics to record the calls in, or {@code null}.
+     */
+    public final static IBookRepository createBookRepository(TransactionalDataSource dataSource,
+                                                             ReplicaRoutingDataSource routing,
+                                                             BookSnapshot snapshot,
+                                                             IAuthorRepository authorRepository,
+                                                             Properties properties,
+                                                             RepositoryMetrics metrics) {
+        JDBCBookRepository jdbcRepository = new JDBCBookRepository(dataSource, authorRepository);
+        jdbcRepository.setFetchSize(fetchSizeOf(properties));
+        jdbcRepository.setSummaryTableEnabled(
+                Boolean.parseBoolean(properties.getProperty("analytics.summaryTable", "false")));
+        jdbcRepository.setConflictRetries(Integer.parseInt(properties.getProperty("optimisticLock.retries", "0")));
+        IBookRepository repository = jdbcRepository;
+        if (routing != null) {
+            repository = new ReplicaRoutingBookRepository(repository, routing);
+        }
+        if (snapshot != null) {
+            repository = new SnapshotBookRepository(repository, dataSource, snapshot);
+        }
+        if (Boolean.parseBoolean(properties.getProperty("search.inMemoryIndex", "false"))) {
+            repository = new IndexedBookRepository(repository);
+        }
+        if (metrics != null) {
+            repository = new InstrumentedBookRepository(repository, metrics);
+        }
+        return repository;
+    }
+
+    /**
+     * Creates the importer used by {@code --import file}. It writes {@code import.transactionSize}
+     * records per transaction and parses them in {@code import.parallelism} threads.
+     */
+    public final static BookImporter createImporter(TransactionalDataSource dataSource,
+                                                    IBookRepository bookRepository,
+                                                    IAuthorRepository authorRepository,
+                                                    Properties properties) {
+        BookImporter importer = new BookImporter(dataSource, bookRepository, authorRepository);
+        importer.setTransactionSize(Integer.parseInt(properties.getProperty("import.transactionSize", "5000")));
+        importer.setParallelism(Integer.parseInt(properties.getProperty("import.parallelism",
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        return importer;
+    }
+
+    /**
+     * Creates the runner used by {@code --exec script}. It commits up to
+     * {@code exec.transactionSize} consecutive writes in one transaction.
+     */
+    public final static ScriptRunner createScriptRunner(TransactionalDataSource dataSource,
+                                                        IBookRepository bookRepository,
+                                                        IAuthorRepository authorRepository,
+                                                        Properties properties) {
+        ScriptRunner runner = new ScriptRunner(dataSource, bookRepository, authorRepository);
+        runner.setTransactionSize(Integer.parseInt(properties.getProperty("exec.transactionSize", "1000")));
+        return runner;
+    }
+
+    /**
+     * Runs {@code --exec script} or {@code --exec script --json}. The script {@code -}
+     * is read from the standard input.
+     *
+     * @return the number of failed commands.
+     */
+    private static long execute(ScriptRunner runner, String[] args) throws IOException {
+        runner.setJsonOutput(args.length == 3 && args[2].equals("--json"));
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        long started = System.nanoTime();
+        long failed;
+        if (args[1].equals("-")) {
+            failed = runner.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), out);
+        } else {
+            try (BufferedReader script = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                failed = runner.run(script, out);
+            }
+        }
+        System.err.printf("Выполнено %d команд за %.1f с, с ошибкой %d, транзакций %d%n",
+                runner.getCommandCount(), (System.nanoTime() - started) / 1e9, failed, runner.getTransactionCount());
+        return failed;
+    }
+
+    /**
+     * Runs {@code --export file}, {@code --export file fromYear toYear}
+     * or {@code --export file --author id}.
+     */
+    private static void export(IBookRepository bookRepository, String[] args) {
+        BookExporter exporter = new BookExporter(bookRepository);
+        Path file = Paths.get(args[1]);
+        long started = System.nanoTime();
+        long count;
+        if (args.length == 4 && args[2].equals("--author")) {
+            count = exporter.exportByAuthorId(file, Integer.parseInt(args[3]));
+        } else if (args.length == 4) {
+            count = exporter.exportBetweenYear(file, Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        } else {
+            count = exporter.exportAll(file);
+        }
+        System.out.printf("Экспортировано %d книг за %.1f с%n", count, (System.nanoTime() - started) / 1e9);
+    }
+
+    public final static Properties loadProperties() throws IOException {
         Properties properties = new Properties();
         try (InputStream in = Files.newInputStream(Paths.get("database.properties"))) {
             properties.load(in);
         }
-        String url = properties.getProperty("url");
-        String username = properties.getProperty("username");
-        String password = properties.getProperty("password");
-        System.out.println("Подключение успешно");
-        return DriverManager.getConnection(url, username, password);
+        return properties;
     }
 }
 
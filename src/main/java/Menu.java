@@ -1,6 +1,7 @@
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 public class Menu {
     private final IAuthorRepository authorRepository;
@@ -25,6 +26,7 @@ public class Menu {
         System.out.println("10. Чтобы найти книги в промежутке между выбранными годами введите 10");
         System.out.println("11. Чтобы удалить таблицу книг введите 11");
         System.out.println("12. Чтобы удалить таблицу авторов введите 12");
+        System.out.println("13. Чтобы вывести статистику по книгам введите 13");
 
         System.out.println("Для выхода нажмите 'Q' ");
 
@@ -48,12 +50,14 @@ public class Menu {
                     saveBook(scanner, bookRepository, authorRepository);
                     break;
                 case "3":
-                    Collection<Author> authors = authorRepository.getAll();
-                    authorRepository.printAuthors(authors);
+                    try (Stream<Author> authors = authorRepository.stream()) {
+                        authorRepository.printAuthors(authors);
+                    }
                     break;
                 case "4":
-                    Collection<Book> books = bookRepository.getAll();
-                    bookRepository.printBooks(books);
+                    try (Stream<Book> books = bookRepository.stream()) {
+                        bookRepository.printBooks(books);
+                    }
                     break;
                 case "5":
                     System.out.println("Для поиска автора по id введите число и нажмите Enter");
@@ -84,7 +88,11 @@ public class Menu {
                     System.out.println("Для удаления книги по id введите число и нажмите Enter");
                     if (scanner.hasNextInt()) {
                         int n = scanner.nextInt();
-                        bookRepository.deleteById(n);
+                        try {
+                            bookRepository.deleteById(n);
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            System.out.println(e.getMessage());
+                        }
                     } else {
                         System.out.println("Вы ввели не число, попробуйсте снова");
                         break;
@@ -94,7 +102,11 @@ public class Menu {
                     System.out.println("Для удаления автора по id введите число и нажмите Enter");
                     if (scanner.hasNextInt()) {
                         int n = scanner.nextInt();
-                        authorRepository.deleteById(n);
+                        try {
+                            authorRepository.deleteById(n);
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            System.out.println(e.getMessage());
+                        }
                     } else {
                         System.out.println("Вы ввели не число, попробуйсте снова");
                         break;
@@ -131,7 +143,6 @@ public class Menu {
                     if (!booksByPeriod.isEmpty()) {
                         System.out.println("Найденные книги");
                         Collection<Book> booksPeriod = booksByPeriod.get();
-                        System.out.println(booksPeriod.isEmpty());
                         bookRepository.printBooks(booksPeriod);
                     } else System.out.println("Книг по заданному поиску не найдено");
                     break;
@@ -143,6 +154,9 @@ public class Menu {
                     authorRepository.deleteAuthorsTable();
                     System.out.println("Таблица авторов удалена");
                     break;
+                case "13":
+                    printStats(bookRepository);
+                    break;
                 case "Q":
                 case "q": {
                     System.out.println("До свидания!");
@@ -183,14 +197,31 @@ public class Menu {
 
         System.out.println("Добавьте автора");
 
-        Author author = saveAuthor(scanner, authorRepository);
-        authorRepository.save(author);
-        book.author = author;
-        bookRepository.save(book);
+        book.author = readAuthor(scanner);
+        bookRepository.save(book); // saves the author in the same transaction
         System.out.println("Спасибо, книга  была сохранена");
     }
 
+    private static void printStats(IBookRepository bookRepository) {
+        System.out.println("Все книги: " + bookRepository.getBookStats());
+        System.out.println("По авторам:");
+        try (Stream<AuthorBookStats> authors = bookRepository.streamAuthorStats()) {
+            authors.forEach(System.out::println);
+        }
+        System.out.println("По десятилетиям:");
+        try (Stream<YearBucket> decades = bookRepository.streamPublishYearHistogram(10)) {
+            decades.forEach(System.out::println);
+        }
+    }
+
     private static Author saveAuthor(Scanner scanner, IAuthorRepository authorRepository) {
+        Author author = readAuthor(scanner);
+        authorRepository.save(author);
+        System.out.println("Спасибо, автор был успешно добавлен");
+        return author;
+    }
+
+    private static Author readAuthor(Scanner scanner) {
         String s;
         Author author = new Author();
         System.out.println("Для добавления нового автора введите его имя (от 2х до 200 символов) и нажмите Enter");
@@ -208,8 +239,6 @@ public class Menu {
         } else {
             System.out.println("Вы ввели не число, попробуйсте снова");
         }
-        authorRepository.save(author);
-        System.out.println("Спасибо, автор был успешно добавлен");
         return author;
     }
 }
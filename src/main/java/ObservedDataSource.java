@@ -0,0 +1,308 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * A {@link DataSource} which times every statement run on its connections
+ * and reports it, with its bound parameters and the rows it read or changed,
+ * to the registered {@link StatementListener}s.
+ * <p>
+ * It wraps the connections of another source, typically the {@link ConnectionPool},
+ * and is itself wrapped by the {@link TransactionalDataSource} the repositories use.
+ * Without listeners the statements are not wrapped at all.
+ */
+public class ObservedDataSource implements DataSource {
+    private final DataSource dataSource;
+    private final List<StatementListener> listeners = new CopyOnWriteArrayList<>();
+
+    public ObservedDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void addListener(StatementListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StatementListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        return listeners.isEmpty() ? connection : observe(connection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The underlying data source defines the credentials");
+    }
+
+    private Connection observe(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(ObservedDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    Object result = call(connection, method, args);
+                    switch (method.getName()) {
+                        case "createStatement":
+                            return observe((Connection) proxy, (Statement) result, Statement.class, null);
+                        case "prepareStatement":
+                            return observe((Connection) proxy, (Statement) result, PreparedStatement.class,
+                                    (String) args[0]);
+                        case "prepareCall":
+                            return observe((Connection) proxy, (Statement) result, CallableStatement.class,
+                                    (String) args[0]);
+                        default:
+                            return result;
+                    }
+                });
+    }
+
+    /**
+     * @param sql The SQL text the statement was prepared with, {@code null} for plain statements.
+     */
+    private Statement observe(Connection owner, Statement statement, Class<? extends Statement> type, String sql) {
+        return (Statement) Proxy.newProxyInstance(ObservedDataSource.class.getClassLoader(),
+                new Class<?>[]{type}, new ObservedStatement(owner, statement, sql));
+    }
+
+    private static long updateCountOf(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        }
+        if (result instanceof int[]) {
+            long total = 0;
+            for (int count : (int[]) result) {
+                total += Math.max(count, 0);
+            }
+            return total;
+        }
+        if (result instanceof long[]) {
+            long total = 0;
+            for (long count : (long[]) result) {
+                total += Math.max(count, 0);
+            }
+            return total;
+        }
+        return -1;
+    }
+
+    /**
+     * Times the runs of one statement and remembers its bound parameters.
+     * The result of a query is wrapped to count its rows, and the query is
+     * reported when the result, or the statement, is closed.
+     */
+    private class ObservedStatement implements InvocationHandler {
+        private final Connection owner;
+        private final Statement statement;
+        private final String preparedSql;
+        private final List<Object> parameters = new ArrayList<>();
+        private int batchSize;
+        private Query openQuery;
+
+        ObservedStatement(Connection owner, Statement statement, String preparedSql) {
+            this.owner = owner;
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(proxy, method, args);
+            }
+            switch (name) {
+                case "getConnection":
+                    return owner;
+                case "addBatch":
+                    batchSize++;
+                    break;
+                case "clearBatch":
+                    batchSize = 0;
+                    break;
+                case "clearParameters":
+                    parameters.clear();
+                    break;
+                case "close":
+                    finishQuery();
+                    break;
+                default:
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+            }
+            return call(statement, method, args);
+        }
+
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+            finishQuery();
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            List<Object> boundParameters = parameters.isEmpty()
+                    ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(parameters));
+            int executedBatchSize = method.getName().endsWith("Batch") ? batchSize : 0;
+            if (executedBatchSize > 0) {
+                batchSize = 0;
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = call(statement, method, args);
+            } catch (Throwable e) {
+                fire(new StatementExecution(sql, boundParameters, executedBatchSize,
+                        System.nanoTime() - start, -1, -1, e));
+                throw e;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (result instanceof ResultSet) {
+                openQuery = new Query(sql, boundParameters, elapsed);
+                return observe((Statement) proxy, (ResultSet) result, openQuery);
+            }
+            fire(new StatementExecution(sql, boundParameters, executedBatchSize, elapsed,
+                    updateCountOf(result), -1, null));
+            return result;
+        }
+
+        private void bind(int index, Object value) {
+            while (parameters.size() < index) {
+                parameters.add(null);
+            }
+            parameters.set(index - 1, value);
+        }
+
+        private void finishQuery() {
+            Query query = openQuery;
+            openQuery = null;
+            if (query != null) {
+                query.finish();
+            }
+        }
+    }
+
+    /**
+     * A query whose result is still being read.
+     */
+    private class Query {
+        final String sql;
+        final List<Object> parameters;
+        long elapsedNanos;
+        long rows;
+        boolean finished;
+
+        Query(String sql, List<Object> parameters, long elapsedNanos) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                fire(new StatementExecution(sql, parameters, 0, elapsedNanos, -1, rows, null));
+            }
+        }
+    }
+
+    private ResultSet observe(Statement owner, ResultSet cursor, Query query) {
+        return (ResultSet) Proxy.newProxyInstance(ObservedDataSource.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next": {
+                            long start = System.nanoTime();
+                            Object hasRow = call(cursor, method, args);
+                            query.elapsedNanos += System.nanoTime() - start;
+                            if ((Boolean) hasRow) {
+                                query.rows++;
+                            }
+                            return hasRow;
+                        }
+                        case "close":
+                            query.finish();
+                            return call(cursor, method, args);
+                        case "getStatement":
+                            return owner;
+                        default:
+                            return call(cursor, method, args);
+                    }
+                });
+    }
+
+    private void fire(StatementExecution execution) {
+        for (StatementListener listener : listeners) {
+            try {
+                listener.executed(execution);
+            } catch (RuntimeException e) {
+                // a broken listener must not fail the statement
+            }
+        }
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        return dataSource.unwrap(type);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) throws SQLException {
+        return type.isInstance(this) || dataSource.isWrapperFor(type);
+    }
+}
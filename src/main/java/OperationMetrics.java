@@ -0,0 +1,105 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The measurements of one repository operation, such as {@code books.getById}.
+ */
+public class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final AtomicLong maxStatementsPerCall = new AtomicLong();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, long rowCount, long statementCount, boolean failed) {
+        latency.record(nanos);
+        if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        statements.add(statementCount);
+        long max;
+        do {
+            max = maxStatementsPerCall.get();
+        } while (statementCount > max && !maxStatementsPerCall.compareAndSet(max, statementCount));
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the number of objects returned by all calls.
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * @return the number of SQL statements run by all calls.
+     */
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    /**
+     * @return the largest number of statements run by one call; a value growing
+     * with the size of the result points at one query per row.
+     */
+    public long getMaxStatementsPerCall() {
+        return maxStatementsPerCall.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    void reset() {
+        latency.reset();
+        errors.reset();
+        rows.reset();
+        statements.reset();
+        maxStatementsPerCall.set(0);
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("operation", name);
+        fields.put("calls", getCalls());
+        fields.put("errors", getErrors());
+        fields.put("rows", getRows());
+        fields.put("statements", getStatements());
+        fields.put("maxStatementsPerCall", getMaxStatementsPerCall());
+        fields.put("meanMicros", latency.getMeanNanos() / 1000);
+        fields.put("p50Micros", latency.getPercentileNanos(50) / 1000);
+        fields.put("p99Micros", latency.getPercentileNanos(99) / 1000);
+        fields.put("maxMicros", latency.getMaxNanos() / 1000);
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-32s calls=%d errors=%d rows=%d statements=%d maxStatementsPerCall=%d"
+                        + " p50=%.3f ms p99=%.3f ms max=%.3f ms",
+                name, getCalls(), getErrors(), getRows(), getStatements(), getMaxStatementsPerCall(),
+                latency.getPercentileNanos(50) / 1e6, latency.getPercentileNanos(99) / 1e6,
+                latency.getMaxNanos() / 1e6);
+    }
+}
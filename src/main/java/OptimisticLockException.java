@@ -0,0 +1,22 @@
+/**
+ * Thrown when a row is saved from an object loaded at an older version:
+ * another writer changed or deleted the row since it was loaded.
+ * The work which loaded the object should load it again and repeat.
+ */
+public class OptimisticLockException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public final String table;
+    public final int id;
+    /**
+     * The version the object was loaded with.
+     */
+    public final long version;
+
+    public OptimisticLockException(String table, int id, long version) {
+        super("The row " + id + " of " + table + " was changed or deleted since version " + version);
+        this.table = table;
+        this.id = id;
+        this.version = version;
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.List;
+
+/**
+ * One page of a listing.
+ * <p>
+ * Pages are fetched by keyset pagination: the token of a page remembers the
+ * sort key of its last row, and the next page starts right after that key,
+ * so every page costs the same index seek regardless of its position.
+ */
+public class Page<T> {
+    public final List<T> items;
+
+    /**
+     * The token to pass for the next page, or {@code null} if this page is the last one.
+     */
+    public final String nextPageToken;
+
+    public Page(List<T> items, String nextPageToken) {
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+}
@@ -0,0 +1,50 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The position after the last row of a page, encoded as an opaque string.
+ */
+final class PageToken {
+    final String sort;
+    final int lastId;
+
+    /**
+     * The sort key of the last row, or {@code null} if the listing is sorted by ID
+     * or the last row has no value in the sort column.
+     */
+    final String lastKey;
+
+    PageToken(String sort, int lastId, String lastKey) {
+        this.sort = sort;
+        this.lastId = lastId;
+        this.lastKey = lastKey;
+    }
+
+    String encode() {
+        String value = sort + ":" + lastId + ":" + (lastKey == null ? "-" : "+" + lastKey);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param expectedSort The order of the listing the token is passed to.
+     * @throws IllegalArgumentException If the token is malformed or belongs to another order.
+     */
+    static PageToken decode(String token, String expectedSort) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page token: " + token, e);
+        }
+        if (parts.length != 3 || !parts[0].equals(expectedSort) || parts[2].isEmpty()) {
+            throw new IllegalArgumentException("Page token does not belong to a listing by " + expectedSort);
+        }
+        try {
+            String lastKey = parts[2].charAt(0) == '+' ? parts[2].substring(1) : null;
+            return new PageToken(parts[0], Integer.parseInt(parts[1]), lastKey);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed page token: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The file formats of imported and exported books, see {@link BookRecord}.
+ */
+public enum RecordFormat {
+    CSV, JSON_LINES;
+
+    /**
+     * @return the format for the file extension, {@code .csv} or {@code .jsonl},
+     * optionally followed by {@code .gz}.
+     * @throws IllegalArgumentException If the extension is not known.
+     */
+    public static RecordFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (isGzip(file)) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return JSON_LINES;
+        }
+        throw new IllegalArgumentException("Unknown file format: " + file);
+    }
+
+    /**
+     * @return true if the file name ends with {@code .gz}.
+     */
+    public static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Sends the reads of another author repository to the replicas of a
+ * {@link ReplicaRoutingDataSource}. Writes and schema changes go to the primary.
+ * The repository must use a data source on top of the routing one.
+ */
+public class ReplicaRoutingAuthorRepository extends ForwardingAuthorRepository {
+    private final ReplicaRoutingDataSource routing;
+
+    public ReplicaRoutingAuthorRepository(IAuthorRepository delegate, ReplicaRoutingDataSource routing) {
+        super(delegate);
+        this.routing = routing;
+    }
+
+    @Override
+    public Collection<Author> getAll() {
+        return routing.readOnly(delegate::getAll);
+    }
+
+    @Override
+    public Stream<Author> stream() {
+        return routing.readOnly(delegate::stream);
+    }
+
+    @Override
+    public void forEach(Consumer<Author> action) {
+        routing.readOnly(() -> {
+            delegate.forEach(action);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<Author> getById(int n) {
+        return routing.readOnly(() -> delegate.getById(n));
+    }
+
+    @Override
+    public Map<Integer, Author> getByIds(Collection<Integer> ids) {
+        return routing.readOnly(() -> delegate.getByIds(ids));
+    }
+
+    @Override
+    public Page<Author> getPage(String pageToken, int pageSize) {
+        return routing.readOnly(() -> delegate.getPage(pageToken, pageSize));
+    }
+
+    @Override
+    public Stream<Change<Author>> changesSince(long version) {
+        return routing.readPrimary(() -> delegate.changesSince(version));
+    }
+}
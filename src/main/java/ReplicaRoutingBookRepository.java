@@ -0,0 +1,108 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Sends the reads of another book repository to the replicas of a
+ * {@link ReplicaRoutingDataSource}. Writes and schema changes go to the primary.
+ * The repository must use a data source on top of the routing one.
+ */
+public class ReplicaRoutingBookRepository extends ForwardingBookRepository {
+    private final ReplicaRoutingDataSource routing;
+
+    public ReplicaRoutingBookRepository(IBookRepository delegate, ReplicaRoutingDataSource routing) {
+        super(delegate);
+        this.routing = routing;
+    }
+
+    @Override
+    public Collection<Book> getAll() {
+        return routing.readOnly(delegate::getAll);
+    }
+
+    @Override
+    public Stream<Book> stream() {
+        return routing.readOnly(delegate::stream);
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        routing.readOnly(() -> {
+            delegate.forEach(action);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<Book> getById(int id) {
+        return routing.readOnly(() -> delegate.getById(id));
+    }
+
+    @Override
+    public Map<Integer, Book> getByIds(Collection<Integer> ids) {
+        return routing.readOnly(() -> delegate.getByIds(ids));
+    }
+
+    @Override
+    public Page<Book> getPage(BookSort sort, String pageToken, int pageSize) {
+        return routing.readOnly(() -> delegate.getPage(sort, pageToken, pageSize));
+    }
+
+    @Override
+    public Optional<Collection<Book>> searchBookByAuthorName(String text) {
+        return routing.readOnly(() -> delegate.searchBookByAuthorName(text));
+    }
+
+    @Override
+    public List<Book> searchBooks(String text, int limit) {
+        return routing.readOnly(() -> delegate.searchBooks(text, limit));
+    }
+
+    @Override
+    public Optional<Collection<Book>> getBookBetweenYear(int year1, int year2) {
+        return routing.readOnly(() -> delegate.getBookBetweenYear(year1, year2));
+    }
+
+    @Override
+    public Page<Book> getPageBetweenYear(int year1, int year2, String pageToken, int pageSize) {
+        return routing.readOnly(() -> delegate.getPageBetweenYear(year1, year2, pageToken, pageSize));
+    }
+
+    @Override
+    public Stream<Book> streamBetweenYear(int year1, int year2) {
+        return routing.readOnly(() -> delegate.streamBetweenYear(year1, year2));
+    }
+
+    @Override
+    public Stream<Book> streamByAuthorId(int authorId) {
+        return routing.readOnly(() -> delegate.streamByAuthorId(authorId));
+    }
+
+    @Override
+    public BookStats getBookStats() {
+        return routing.readOnly(delegate::getBookStats);
+    }
+
+    @Override
+    public Stream<AuthorBookStats> streamAuthorStats() {
+        return routing.readOnly(delegate::streamAuthorStats);
+    }
+
+    @Override
+    public Stream<YearBucket> streamPublishYearHistogram(int bucketWidth) {
+        return routing.readOnly(() -> delegate.streamPublishYearHistogram(bucketWidth));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The changes are read from the primary: their queries must see the same
+     * state, and replicas chosen in turn may have replayed different versions.
+     */
+    @Override
+    public Stream<Change<Book>> changesSince(long version) {
+        return routing.readPrimary(() -> delegate.changesSince(version));
+    }
+}
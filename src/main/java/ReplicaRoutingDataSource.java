@@ -0,0 +1,430 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * A {@link DataSource} which sends reads to replicas of the primary database.
+ * <p>
+ * Connections are borrowed from the primary, unless the current thread runs
+ * inside {@link #readOnly(Supplier)}. Then a healthy replica is chosen, in turn
+ * or by the fewest borrowed connections. A replica which fails to give a
+ * connection or to pass the periodic health check is skipped until it passes
+ * again. A replica which only timed out waiting for a free connection is busy,
+ * not down: the read goes elsewhere and the replica stays in use. If no replica
+ * can give a connection, the read goes to the primary.
+ * <p>
+ * Replicas lag behind the primary, so for {@code stickinessMillis} after a thread
+ * committed a write, the reads of that thread go to the primary as well and see
+ * the write. The reads of other threads are not held back. Transactions must not
+ * be started inside {@link #readOnly(Supplier)}.
+ */
+public class ReplicaRoutingDataSource implements DataSource, AutoCloseable {
+
+    /**
+     * How a replica is chosen for a read.
+     */
+    public enum Balance {
+        ROUND_ROBIN,
+        LEAST_LOADED
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Balance balance;
+    private final long stickinessNanos;
+    /**
+     * Whether the reads of the thread go to a replica, {@code null} outside a read.
+     */
+    private final ThreadLocal<Boolean> reading = new ThreadLocal<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong busyReplicas = new AtomicLong();
+    /**
+     * When the thread last committed a write.
+     */
+    private final ThreadLocal<Long> lastWriteNanos =
+            ThreadLocal.withInitial(() -> System.nanoTime() - TimeUnit.DAYS.toNanos(1));
+
+    /**
+     * @param replicas              The replica sources, closed by {@link #close()} if they are closeable.
+     * @param stickinessMillis      How long after a write reads still go to the primary.
+     * @param healthCheckMillis     How often the replicas are checked, or 0 to check them
+     *                              only by calling {@link #checkReplicas(int)}.
+     * @param healthCheckTimeoutSec How long a replica may take to answer a health check.
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Balance balance,
+                                    long stickinessMillis, long healthCheckMillis, int healthCheckTimeoutSec) {
+        this.primary = primary;
+        for (DataSource replica : replicas) {
+            this.replicas.add(new Replica(replica));
+        }
+        this.balance = balance;
+        this.stickinessNanos = TimeUnit.MILLISECONDS.toNanos(stickinessMillis);
+        if (healthCheckMillis > 0 && !replicas.isEmpty()) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecker.scheduleWithFixedDelay(() -> checkReplicas(healthCheckTimeoutSec),
+                    healthCheckMillis, healthCheckMillis, TimeUnit.MILLISECONDS);
+        } else {
+            healthChecker = null;
+        }
+    }
+
+    /**
+     * Runs the work with the connections of the current thread borrowed from a replica.
+     */
+    public <T> T readOnly(Supplier<T> work) {
+        return read(Boolean.TRUE, work);
+    }
+
+    /**
+     * Runs reads which need the primary, without taking them for writes, so they do
+     * not keep the other reads on the primary. Used where several queries must see
+     * the same database state.
+     */
+    public <T> T readPrimary(Supplier<T> work) {
+        return read(Boolean.FALSE, work);
+    }
+
+    /**
+     * @param fromReplica {@code TRUE} to read from a replica, {@code FALSE} from the primary.
+     */
+    private <T> T read(Boolean fromReplica, Supplier<T> work) {
+        if (reading.get() != null) {
+            return work.get();
+        }
+        reading.set(fromReplica);
+        try {
+            return work.get();
+        } finally {
+            reading.remove();
+        }
+    }
+
+    /**
+     * @return a replica connection inside {@link #readOnly(Supplier)} if a replica is healthy
+     * and the thread made no write recently, a primary connection otherwise.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        Boolean fromReplica = reading.get();
+        if (fromReplica == null) {
+            return trackWrite(primary.getConnection());
+        }
+        if (fromReplica && System.nanoTime() - lastWriteNanos.get() >= stickinessNanos) {
+            for (int attempt = 0; attempt < replicas.size(); attempt++) {
+                Replica replica = choose();
+                if (replica == null) {
+                    break;
+                }
+                try {
+                    Connection connection = replica.borrow();
+                    replicaReads.incrementAndGet();
+                    return connection;
+                } catch (SQLTimeoutException e) {
+                    busyReplicas.incrementAndGet();
+                } catch (SQLException e) {
+                    replica.healthy = false;
+                }
+            }
+        }
+        primaryReads.incrementAndGet();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The underlying data sources define the credentials");
+    }
+
+    /**
+     * @return the number of connections given for reads by replicas.
+     */
+    public long getReplicaReads() {
+        return replicaReads.get();
+    }
+
+    /**
+     * @return the number of connections given for reads by the primary.
+     */
+    public long getPrimaryReads() {
+        return primaryReads.get();
+    }
+
+    /**
+     * @return how many times a replica had no free connection in time for a read.
+     */
+    public long getBusyReplicas() {
+        return busyReplicas.get();
+    }
+
+    public int getHealthyReplicas() {
+        int count = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks every replica now, see the class description.
+     */
+    public void checkReplicas(int timeoutSeconds) {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                replica.healthy = connection.isValid(timeoutSeconds);
+            } catch (SQLException | RuntimeException e) {
+                replica.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Stops the health checks and closes the replica sources. The primary is not closed.
+     */
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) replica.dataSource).close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "реплик доступно " + getHealthyReplicas() + " из " + replicas.size() +
+                ", чтений с реплик " + getReplicaReads() +
+                ", чтений с основной базы " + getPrimaryReads() +
+                ", реплика занята " + getBusyReplicas() + " раз";
+    }
+
+    /**
+     * @return a healthy replica, or {@code null} if there is none.
+     */
+    private Replica choose() {
+        Replica chosen = null;
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy) {
+                continue;
+            }
+            if (balance == Balance.ROUND_ROBIN) {
+                return replica;
+            }
+            if (chosen == null || replica.borrowed.get() < chosen.borrowed.get()) {
+                chosen = replica;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Wraps a primary connection, so the write time of the thread is taken when a write
+     * made through it is committed: right after it ran in auto-commit mode, or by the
+     * commit of its transaction. Writes rolled back do not count.
+     */
+    private Connection trackWrite(Connection connection) {
+        AtomicBoolean uncommittedWrite = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ReplicaRoutingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "rollback":
+                            if (args == null) {
+                                uncommittedWrite.set(false);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    switch (method.getName()) {
+                        case "commit":
+                            if (uncommittedWrite.getAndSet(false)) {
+                                lastWriteNanos.set(System.nanoTime());
+                            }
+                            break;
+                        case "setAutoCommit":
+                            // turning auto-commit on commits the open transaction
+                            if ((Boolean) args[0] && uncommittedWrite.getAndSet(false)) {
+                                lastWriteNanos.set(System.nanoTime());
+                            }
+                            break;
+                        case "createStatement":
+                        case "prepareStatement":
+                        case "prepareCall":
+                            return trackWrite(connection, (Statement) result, method.getReturnType(), uncommittedWrite);
+                        default:
+                            break;
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Wraps a statement of a primary connection to see the updates it runs.
+     */
+    private Statement trackWrite(Connection connection, Statement statement, Class<?> type,
+                                 AtomicBoolean uncommittedWrite) {
+        return (Statement) Proxy.newProxyInstance(ReplicaRoutingDataSource.class.getClassLoader(),
+                new Class<?>[]{type}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    boolean write;
+                    switch (method.getName()) {
+                        case "execute":
+                            // true means the statement returned a result set, so it was a query
+                            write = !(Boolean) result;
+                            break;
+                        case "executeUpdate":
+                        case "executeLargeUpdate":
+                        case "executeBatch":
+                        case "executeLargeBatch":
+                            write = true;
+                            break;
+                        default:
+                            write = false;
+                            break;
+                    }
+                    if (write) {
+                        if (connection.getAutoCommit()) {
+                            lastWriteNanos.set(System.nanoTime());
+                        } else {
+                            uncommittedWrite.set(true);
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    private static class Replica {
+        final DataSource dataSource;
+        final AtomicInteger borrowed = new AtomicInteger();
+        volatile boolean healthy = true;
+
+        Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * Borrows a connection which is counted as borrowed until it is closed.
+         */
+        Connection borrow() throws SQLException {
+            Connection connection = dataSource.getConnection();
+            borrowed.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(ReplicaRoutingDataSource.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (closed.compareAndSet(false, true)) {
+                                    borrowed.decrementAndGet();
+                                }
+                                break;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                break;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        return primary.unwrap(type);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) throws SQLException {
+        return type.isInstance(this) || primary.isWrapperFor(type);
+    }
+}
@@ -0,0 +1,178 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Latency, rows, statements and errors per repository operation.
+ * <p>
+ * The instrumented repositories measure their calls with {@code measure}. Statements
+ * are counted by registering the metrics as a listener of an {@link ObservedDataSource}:
+ * each statement is attributed to the operations running on the same thread, so
+ * the statement count of a call includes the calls it makes to other repositories.
+ * Recording takes a few atomic increments and no locks.
+ */
+public class RepositoryMetrics implements StatementListener, RepositoryMetricsMXBean, AutoCloseable {
+    private final ConcurrentSkipListMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+    private final ThreadLocal<long[]> statementCount = ThreadLocal.withInitial(() -> new long[1]);
+    private ScheduledExecutorService reporter;
+    private ObjectName registeredName;
+
+    @Override
+    public void executed(StatementExecution execution) {
+        statementCount.get()[0]++;
+    }
+
+    /**
+     * Runs the call and records it under the operation name.
+     *
+     * @param rows Counts the objects in the result.
+     */
+    public <T> T measure(String operation, Supplier<T> call, ToLongFunction<? super T> rows) {
+        long[] statements = statementCount.get();
+        long statementsBefore = statements[0];
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            operation(operation).record(System.nanoTime() - start, 0, statements[0] - statementsBefore, true);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        operation(operation).record(elapsed, rows.applyAsLong(result), statements[0] - statementsBefore, false);
+        return result;
+    }
+
+    public void measure(String operation, Runnable call) {
+        measure(operation, () -> {
+            call.run();
+            return null;
+        }, result -> 0);
+    }
+
+    /**
+     * Opens the stream and records it when it is closed, with the time it was
+     * open and the number of objects read from it.
+     */
+    public <T> Stream<T> measureStream(String operation, Supplier<Stream<T>> open) {
+        long[] statements = statementCount.get();
+        long statementsBefore = statements[0];
+        long start = System.nanoTime();
+        Stream<T> stream;
+        try {
+            stream = open.get();
+        } catch (RuntimeException | Error e) {
+            operation(operation).record(System.nanoTime() - start, 0, statements[0] - statementsBefore, true);
+            throw e;
+        }
+        long[] rows = new long[1];
+        // Queries are reported when their result is closed, so the statements are counted at close.
+        return stream.peek(item -> rows[0]++)
+                .onClose(() -> operation(operation).record(System.nanoTime() - start, rows[0],
+                        statementCount.get()[0] - statementsBefore, false));
+    }
+
+    /**
+     * @return the metrics of the operation, created on first use.
+     */
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        return metrics != null ? metrics : operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    /**
+     * @return the metrics of every operation called so far, ordered by name.
+     */
+    public Collection<OperationMetrics> getOperations() {
+        return new ArrayList<>(operations.values());
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (OperationMetrics metrics : operations.values()) {
+            if (metrics.getCalls() > 0) {
+                report.append(metrics).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder json = new StringBuilder();
+        for (OperationMetrics metrics : operations.values()) {
+            if (metrics.getCalls() > 0) {
+                FlatJson.format(json, metrics.toMap());
+                json.append('\n');
+            }
+        }
+        return json.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (OperationMetrics metrics : operations.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Makes the metrics readable through JMX under {@code library:type=RepositoryMetrics,name=<name>}.
+     */
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("library:type=RepositoryMetrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Prints the report, or the JSON objects, every period until {@link #close()}.
+     */
+    public synchronized void startReporting(long periodMillis, boolean json, PrintStream out) {
+        if (reporter != null) {
+            throw new IllegalStateException("Reporting is already started");
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "repository-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(json ? getJson() : getReport()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic report and unregisters the MBean.
+     */
+    @Override
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException ignored) {
+            }
+            registeredName = null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * The repository metrics as seen through JMX, see {@link RepositoryMetrics}.
+ */
+public interface RepositoryMetricsMXBean {
+
+    /**
+     * @return one line per operation.
+     */
+    String getReport();
+
+    /**
+     * @return one JSON object per operation, one per line.
+     */
+    String getJson();
+
+    void reset();
+}
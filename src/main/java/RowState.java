@@ -0,0 +1,83 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Column values of a row as last read from or written to the database.
+ * <p>
+ * Repositories keep the state in the loaded objects and compare it with the
+ * current values on save, so an UPDATE sets only the columns which changed
+ * and is skipped when nothing changed.
+ */
+final class RowState {
+    private final Object[] values;
+
+    RowState(Object... values) {
+        this.values = values;
+    }
+
+    /**
+     * Returns a bit per column, set for the columns whose values differ.
+     *
+     * @param saved The state the row was loaded with, {@code null} if unknown,
+     *              in which case every column counts as changed.
+     */
+    static int changedColumns(RowState saved, RowState current) {
+        int columns = current.values.length;
+        if (saved == null) {
+            return columns == Integer.SIZE ? -1 : (1 << columns) - 1;
+        }
+        int changed = 0;
+        for (int i = 0; i < columns; i++) {
+            if (!Objects.equals(saved.values[i], current.values[i])) {
+                changed |= 1 << i;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Builds {@code UPDATE table SET column = ?, ..., row_version = ? WHERE idColumn = ?}
+     * for the changed columns.
+     *
+     * @param checkVersion Whether to add {@code AND row_version = ?}, so a row changed
+     *                     by someone else since it was loaded is not updated.
+     */
+    static String updateSql(String table, String[] columns, int changed, String idColumn, boolean checkVersion) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        String separator = "";
+        for (int i = 0; i < columns.length; i++) {
+            if ((changed & 1 << i) != 0) {
+                sql.append(separator).append(columns[i]).append(" = ?");
+                separator = ", ";
+            }
+        }
+        sql.append(separator).append("row_version = ?")
+                .append(" WHERE ").append(idColumn).append(" = ?");
+        if (checkVersion) {
+            sql.append(" AND row_version = ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Binds the values of the changed columns in column order, starting at the first parameter.
+     *
+     * @return the index of the next parameter.
+     */
+    int bindChanged(PreparedStatement statement, int changed) throws SQLException {
+        int index = 1;
+        for (int i = 0; i < values.length; i++) {
+            if ((changed & 1 << i) != 0) {
+                statement.setObject(index++, values[i]);
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,217 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out the versions written to the {@code row_version} columns and tombstones.
+ * <p>
+ * Rows are written with the {@link #PENDING} version, and the IDs written by the
+ * transaction are remembered. Just before the commit, the transaction takes the
+ * next version from one counter row and stamps it on those rows and tombstones.
+ * The counter row stays locked until the commit is done, so versions become
+ * visible in increasing order: once a reader sees a version, every lower version
+ * is already committed. Readers can then ask for the changes after the highest
+ * version they have seen and miss nothing.
+ * <p>
+ * Writers wait for each other only while stamping and committing, not for the
+ * whole of their transactions, and need no connection besides their own.
+ */
+final class RowVersions {
+    /**
+     * The version of rows written by a transaction which is not committed yet.
+     * Other transactions never see it.
+     */
+    static final long PENDING = 0;
+
+    private static final Object TRANSACTION_STAMP = new Object();
+
+    /**
+     * How many IDs are stamped by one statement.
+     */
+    private static final int STAMP_BATCH_SIZE = 1000;
+
+    private RowVersions() {
+    }
+
+    /**
+     * Prepares the current transaction for writing rows, see the class description.
+     *
+     * @return the version to write until the commit, {@link #PENDING}.
+     * @throws IllegalStateException If the thread is not in a transaction.
+     */
+    static long pending(TransactionalDataSource dataSource) {
+        stampOf(dataSource);
+        return PENDING;
+    }
+
+    /**
+     * Remembers that the row with the ID was written in the current transaction, so it is stamped on commit.
+     * A rollback to a savepoint set before this call forgets it again.
+     *
+     * @return the version the row gets, known once the transaction is committed.
+     */
+    static LongSupplier written(TransactionalDataSource dataSource, String table, String idColumn, int id) {
+        return remember(dataSource, table, idColumn, id);
+    }
+
+    /**
+     * @param idCondition The start of the condition selecting the rows, completed by {@code IN (ids)}.
+     */
+    private static LongSupplier remember(TransactionalDataSource dataSource, String table, String idCondition,
+                                         int id) {
+        Stamp stamp = stampOf(dataSource);
+        List<Integer> ids = stamp.rows.computeIfAbsent(table + " " + idCondition,
+                key -> new Rows(table, idCondition)).ids;
+        ids.add(id);
+        // rollback actions run latest first, so each removes its own ID
+        dataSource.afterRollback(() -> ids.remove(ids.size() - 1));
+        return () -> stamp.version;
+    }
+
+    private static Stamp stampOf(TransactionalDataSource dataSource) {
+        if (!dataSource.isInTransaction()) {
+            throw new IllegalStateException("A row version must be taken in the transaction of the write");
+        }
+        return dataSource.getTransactionResource(TRANSACTION_STAMP, () -> {
+            Stamp stamp = new Stamp();
+            dataSource.beforeCommit(() -> stamp.apply(dataSource));
+            // a rollback to a savepoint before this drops the commit action, so the stamp goes too
+            dataSource.afterRollback(() -> dataSource.removeTransactionResource(TRANSACTION_STAMP));
+            return stamp;
+        });
+    }
+
+    /**
+     * @return the highest committed version. Every version up to it is committed,
+     * so changes up to it can be read without missing a later commit of a lower version.
+     */
+    static long current(TransactionalDataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet cursor = statement.executeQuery("SELECT version FROM row_versions WHERE name = 'rows'")) {
+            return cursor.next() ? cursor.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Records that the rows of the table were deleted in the current transaction,
+     * replacing older tombstones of the same IDs.
+     */
+    static void tombstones(TransactionalDataSource dataSource, Connection connection, String table,
+                           Collection<Integer> ids) throws SQLException {
+        long version = pending(dataSource);
+        for (List<Integer> chunk : IdChunks.split(ids)) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM tombstones WHERE table_name = ? AND id IN (" +
+                            IdChunks.placeholders(chunk.size()) + ")")) {
+                statement.setString(1, table);
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setInt(i + 2, chunk.get(i));
+                }
+                statement.executeUpdate();
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO tombstones(table_name, id, row_version) VALUES(?, ?, ?)")) {
+            for (int id : new LinkedHashSet<>(ids)) {
+                statement.setString(1, table);
+                statement.setInt(2, id);
+                statement.setLong(3, version);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        for (int id : new LinkedHashSet<>(ids)) {
+            remember(dataSource, "tombstones", "table_name = '" + table + "' AND id", id);
+        }
+    }
+
+    /**
+     * Reads the tombstones of the table with versions after {@code version} up to
+     * {@code upTo}, as deletions in version order. They are read at once rather than
+     * streamed, so the rows can be streamed next on the same connection.
+     */
+    static <T> List<Change<T>> tombstonesSince(TransactionalDataSource dataSource, String table,
+                                              long version, long upTo) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT id, row_version FROM tombstones" +
+                             " WHERE table_name = ? AND row_version > ? AND row_version <= ?" +
+                             " ORDER BY row_version, id")) {
+            statement.setString(1, table);
+            statement.setLong(2, version);
+            statement.setLong(3, upTo);
+            List<Change<T>> deletions = new ArrayList<>();
+            try (ResultSet cursor = statement.executeQuery()) {
+                while (cursor.next()) {
+                    deletions.add(new Change<>(cursor.getLong("row_version"), cursor.getInt("id"), null));
+                }
+            }
+            return deletions;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The rows of one table written by a transaction.
+     */
+    private static final class Rows {
+        final String table;
+        final String idCondition;
+        final List<Integer> ids = new ArrayList<>();
+
+        Rows(String table, String idCondition) {
+            this.table = table;
+            this.idCondition = idCondition;
+        }
+    }
+
+    /**
+     * The rows written by one transaction, and the version stamped on them.
+     */
+    private static final class Stamp {
+        final Map<String, Rows> rows = new LinkedHashMap<>();
+        long version;
+
+        void apply(TransactionalDataSource dataSource) {
+            if (rows.values().stream().allMatch(written -> written.ids.isEmpty())) {
+                return;
+            }
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("UPDATE row_versions SET version = version + 1 WHERE name = 'rows'");
+                try (ResultSet cursor = statement.executeQuery("SELECT version FROM row_versions WHERE name = 'rows'")) {
+                    if (!cursor.next()) {
+                        throw new RuntimeException("The row version counter is missing, the schema is not migrated");
+                    }
+                    version = cursor.getLong(1);
+                }
+                for (Rows written : rows.values()) {
+                    List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(written.ids));
+                    for (int from = 0; from < ids.size(); from += STAMP_BATCH_SIZE) {
+                        String list = ids.subList(from, Math.min(from + STAMP_BATCH_SIZE, ids.size())).stream()
+                                .map(String::valueOf)
+                                .collect(Collectors.joining(", "));
+                        statement.executeUpdate("UPDATE " + written.table + " SET row_version = " + version +
+                                " WHERE " + written.idCondition + " IN (" + list + ")");
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
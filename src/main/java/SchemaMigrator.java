@@ -0,0 +1,213 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Brings the database schema to the latest version.
+ * <p>
+ * Every change of the schema is a numbered migration. The versions already
+ * applied are recorded in the {@code schema_version} table, and {@link #migrate()}
+ * applies the missing ones in order. New changes are added as new migrations
+ * at the end of {@link #MIGRATIONS}, applied migrations are never edited.
+ * <p>
+ * Every migration checks what already exists before changing it, so databases
+ * created before the migrations were introduced are upgraded in place, and two
+ * processes starting at the same time do not break each other.
+ */
+public class SchemaMigrator {
+
+    /**
+     * One change of the schema.
+     */
+    @FunctionalInterface
+    interface Change {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    static class Migration {
+        final int version;
+        final String description;
+        final Change change;
+
+        Migration(int version, String description, Change change) {
+            this.version = version;
+            this.description = description;
+            this.change = change;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(new ArrayList<Migration>() {{
+        add(new Migration(1, "Create authors table", connection -> execute(connection,
+                "CREATE TABLE IF NOT EXISTS authors(" +
+                        " id_author INTEGER PRIMARY KEY AUTO_INCREMENT, " +
+                        " name VARCHAR(200), " +
+                        " birth_year INTEGER" +
+                        ")")));
+        add(new Migration(2, "Create books table", connection -> execute(connection,
+                "CREATE TABLE IF NOT EXISTS books(" +
+                        " id_book INTEGER PRIMARY KEY AUTO_INCREMENT, " +
+                        " title VARCHAR(200), " +
+                        " pages_count INTEGER, " +
+                        " publish_year INTEGER, " +
+                        " author_id INTEGER" +
+                        ")")));
+        add(new Migration(3, "Index books by publish year and by title", connection -> {
+            JdbcSchema.createIndexIfMissing(connection, "books", "idx_books_publish_year", "publish_year, id_book");
+            JdbcSchema.createIndexIfMissing(connection, "books", "idx_books_title", "title, id_book");
+        }));
+        add(new Migration(4, "Index books by author and authors by name", connection -> {
+            JdbcSchema.createIndexIfMissing(connection, "books", "idx_books_author_id", "author_id");
+            JdbcSchema.createIndexIfMissing(connection, "authors", "idx_authors_name", "name");
+        }));
+        add(new Migration(5, "Reference authors from books", connection -> {
+            if (JdbcSchema.hasForeignKey(connection, "books", "fk_books_author")) {
+                return;
+            }
+            // Books of deleted authors would violate the constraint, they are kept without an author.
+            execute(connection, "UPDATE books SET author_id = NULL" +
+                    " WHERE author_id IS NOT NULL" +
+                    " AND author_id NOT IN (SELECT id_author FROM authors)");
+            execute(connection, "ALTER TABLE books ADD CONSTRAINT fk_books_author" +
+                    " FOREIGN KEY (author_id) REFERENCES authors(id_author)");
+        }));
+        add(new Migration(6, "Create book statistics per author", connection -> execute(connection,
+                "CREATE TABLE IF NOT EXISTS author_book_stats(" +
+                        " author_id INTEGER PRIMARY KEY, " +
+                        " book_count INTEGER, " +
+                        " total_pages BIGINT, " +
+                        " min_pages INTEGER, " +
+                        " max_pages INTEGER" +
+                        ")")));
+        add(new Migration(7, "Create import checkpoints", connection -> execute(connection,
+                "CREATE TABLE IF NOT EXISTS import_checkpoints(" +
+                        " source VARCHAR(500) PRIMARY KEY, " +
+                        " records BIGINT, " +
+                        " updated_at TIMESTAMP" +
+                        ")")));
+        add(new Migration(8, "Track row versions and deleted rows", connection -> {
+            JdbcSchema.addColumnIfMissing(connection, "authors", "row_version", "BIGINT NOT NULL DEFAULT 1");
+            JdbcSchema.addColumnIfMissing(connection, "books", "row_version", "BIGINT NOT NULL DEFAULT 1");
+            JdbcSchema.createIndexIfMissing(connection, "authors", "idx_authors_row_version", "row_version");
+            JdbcSchema.createIndexIfMissing(connection, "books", "idx_books_row_version", "row_version");
+            execute(connection, "CREATE TABLE IF NOT EXISTS tombstones(" +
+                    " table_name VARCHAR(20) NOT NULL, " +
+                    " id INTEGER NOT NULL, " +
+                    " row_version BIGINT NOT NULL, " +
+                    " PRIMARY KEY (table_name, id)" +
+                    ")");
+            JdbcSchema.createIndexIfMissing(connection, "tombstones", "idx_tombstones_row_version",
+                    "table_name, row_version");
+            execute(connection, "CREATE TABLE IF NOT EXISTS row_versions(" +
+                    " name VARCHAR(20) PRIMARY KEY, " +
+                    " version BIGINT NOT NULL" +
+                    ")");
+            try (Statement statement = connection.createStatement();
+                 ResultSet cursor = statement.executeQuery("SELECT COUNT(*) FROM row_versions")) {
+                cursor.next();
+                if (cursor.getInt(1) == 0) {
+                    // existing rows have version 1, so the counter starts there
+                    execute(connection, "INSERT INTO row_versions(name, version) VALUES('rows', 1)");
+                }
+            }
+        }));
+    }});
+
+    private final DataSource dataSource;
+
+    public SchemaMigrator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the version the schema will have after {@link #migrate()}.
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Applies the migrations the database does not have yet.
+     *
+     * @return the version of the schema after the upgrade.
+     */
+    public int migrate() {
+        try (Connection connection = dataSource.getConnection()) {
+            createVersionTable(connection);
+            int current = currentVersion(connection);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version > current) {
+                    migration.change.apply(connection);
+                    recordVersion(connection, migration);
+                    current = migration.version;
+                }
+            }
+            return current;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the version of the schema, 0 if no migration has been applied.
+     */
+    public int getCurrentVersion() {
+        try (Connection connection = dataSource.getConnection()) {
+            createVersionTable(connection);
+            return currentVersion(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Forgets the applied migrations after tables were dropped,
+     * so the next {@link #migrate()} creates them again.
+     */
+    public void reset() {
+        try (Connection connection = dataSource.getConnection()) {
+            execute(connection, "DROP TABLE IF EXISTS schema_version");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void createVersionTable(Connection connection) throws SQLException {
+        execute(connection, "CREATE TABLE IF NOT EXISTS schema_version(" +
+                " version INTEGER PRIMARY KEY, " +
+                " description VARCHAR(200), " +
+                " applied_at TIMESTAMP" +
+                ")");
+    }
+
+    private static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet cursor = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return cursor.next() ? cursor.getInt(1) : 0;
+        }
+    }
+
+    private static void recordVersion(Connection connection, Migration migration) throws SQLException {
+        if (currentVersion(connection) >= migration.version) {
+            return; // recorded by another process in the meantime
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO schema_version(version, description, applied_at)" +
+                        " VALUES(?, ?, CURRENT_TIMESTAMP)")) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Runs a script of commands without prompts, one command per line:
+ * <pre>
+ * add-author NAME BIRTH_YEAR
+ * add-book TITLE PUBLISH_YEAR PAGES_COUNT [AUTHOR_ID]
+ * delete-book ID
+ * delete-author ID
+ * get-book ID
+ * get-author ID
+ * search AUTHOR_NAME
+ * range FROM_YEAR TO_YEAR
+ * </pre>
+ * Words containing spaces are written in double quotes, lines starting with
+ * {@code #} are comments. {@code add-book} without an author ID takes the
+ * author added last by the script, as long as its transaction did not fail to commit.
+ * <p>
+ * Consecutive writes run in one transaction, committed before the next read,
+ * after {@link #setTransactionSize(int)} writes and at the end of the script.
+ * Every write has a savepoint, so a failing command is rolled back alone and
+ * reported, and the script goes on. A write is reported as done when it ran;
+ * if its transaction then fails to commit, that is reported as well.
+ * <p>
+ * Results are written to a buffered writer as CSV records and text lines,
+ * or with {@link #setJsonOutput(boolean)} as one JSON object per line.
+ * A runner runs one script at a time.
+ */
+public class ScriptRunner {
+    private final TransactionalDataSource dataSource;
+    private final IBookRepository bookRepository;
+    private final IAuthorRepository authorRepository;
+    private int transactionSize = 1000;
+    private boolean jsonOutput;
+
+    private Writer out;
+    private int lineNumber;
+    private int lastAuthorId;
+    private boolean lastAuthorUncommitted;
+    private int writesInTransaction;
+    private int firstLineInTransaction;
+    private long commandCount;
+    private long failedCount;
+    private long transactionCount;
+
+    public ScriptRunner(TransactionalDataSource dataSource, IBookRepository bookRepository,
+                        IAuthorRepository authorRepository) {
+        this.dataSource = dataSource;
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+    }
+
+    /**
+     * Sets how many consecutive writes are committed in one transaction.
+     */
+    public void setTransactionSize(int transactionSize) {
+        if (transactionSize <= 0) {
+            throw new IllegalArgumentException("Transaction size must be positive: " + transactionSize);
+        }
+        this.transactionSize = transactionSize;
+    }
+
+    /**
+     * Writes every result as a JSON object on its own line instead of CSV and text.
+     */
+    public void setJsonOutput(boolean jsonOutput) {
+        this.jsonOutput = jsonOutput;
+    }
+
+    /**
+     * Runs the commands of the script and writes their results. The output is flushed, not closed.
+     * Writes not yet committed when reading the script fails are rolled back.
+     *
+     * @return the number of failed commands.
+     */
+    public long run(BufferedReader script, Writer out) {
+        this.out = out;
+        lineNumber = 0;
+        lastAuthorId = Author.INVALID_ID;
+        lastAuthorUncommitted = false;
+        commandCount = 0;
+        failedCount = 0;
+        transactionCount = 0;
+        try {
+            String line;
+            while ((line = script.readLine()) != null) {
+                lineNumber++;
+                String text = line.trim();
+                if (!text.isEmpty() && !text.startsWith("#")) {
+                    commandCount++;
+                    execute(text);
+                }
+            }
+            commit();
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (dataSource.isInTransaction()) {
+                dataSource.rollback();
+            }
+        }
+        return failedCount;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the number of transactions the writes of the last script were committed in.
+     */
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    private void execute(String text) throws IOException {
+        String command = "";
+        try {
+            List<String> words = split(text);
+            command = words.get(0).toLowerCase(Locale.ROOT);
+            switch (command) {
+                case "add-author":
+                    expectWords(words, 3, 3);
+                    addAuthor(words.get(1), toInt(words.get(2)));
+                    break;
+                case "add-book":
+                    expectWords(words, 4, 5);
+                    addBook(words.get(1), toInt(words.get(2)), toInt(words.get(3)),
+                            words.size() == 5 ? toInt(words.get(4)) : lastAuthorId);
+                    break;
+                case "delete-book":
+                    expectWords(words, 2, 2);
+                    deleteBook(toInt(words.get(1)));
+                    break;
+                case "delete-author":
+                    expectWords(words, 2, 2);
+                    deleteAuthor(toInt(words.get(1)));
+                    break;
+                case "get-book":
+                    expectWords(words, 2, 2);
+                    getBook(toInt(words.get(1)));
+                    break;
+                case "get-author":
+                    expectWords(words, 2, 2);
+                    getAuthor(toInt(words.get(1)));
+                    break;
+                case "search":
+                    expectWords(words, 2, 2);
+                    search(words.get(1));
+                    break;
+                case "range":
+                    expectWords(words, 3, 3);
+                    range(toInt(words.get(1)), toInt(words.get(2)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + words.get(0));
+            }
+        } catch (RuntimeException e) {
+            failedCount++;
+            writeError(command, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private void addAuthor(String name, int birthYear) throws IOException {
+        Author author = new Author();
+        author.name = name;
+        author.birthYear = birthYear;
+        write(() -> authorRepository.save(author));
+        lastAuthorId = author.id;
+        lastAuthorUncommitted = true;
+        writeDone("add-author", author.id);
+    }
+
+    private void addBook(String title, int publishYear, int pagesCount, int authorId) throws IOException {
+        if (authorId == Author.INVALID_ID) {
+            throw new IllegalArgumentException("No author ID is given and no author was added before");
+        }
+        Book book = new Book();
+        book.title = title;
+        book.publishYear = publishYear;
+        book.pagesCount = pagesCount;
+        write(() -> {
+            book.author = authorRepository.getById(authorId)
+                    .orElseThrow(() -> new IllegalArgumentException("No author with ID " + authorId));
+            bookRepository.save(book);
+        });
+        writeDone("add-book", book.id);
+    }
+
+    private void deleteBook(int id) throws IOException {
+        write(() -> bookRepository.deleteById(id));
+        writeDone("delete-book", id);
+    }
+
+    private void deleteAuthor(int id) throws IOException {
+        write(() -> authorRepository.deleteById(id));
+        writeDone("delete-author", id);
+    }
+
+    private void getBook(int id) throws IOException {
+        commit();
+        Optional<Book> book = bookRepository.getById(id);
+        if (book.isPresent()) {
+            writeBook(book.get());
+        } else {
+            writeNotFound("get-book", id);
+        }
+    }
+
+    private void getAuthor(int id) throws IOException {
+        commit();
+        Optional<Author> author = authorRepository.getById(id);
+        if (author.isPresent()) {
+            writeAuthor(author.get());
+        } else {
+            writeNotFound("get-author", id);
+        }
+    }
+
+    private void search(String authorName) throws IOException {
+        commit();
+        Optional<Collection<Book>> books = bookRepository.searchBookByAuthorName(authorName);
+        if (books.isPresent()) {
+            for (Book book : books.get()) {
+                writeBook(book);
+            }
+        }
+    }
+
+    private void range(int year1, int year2) throws IOException {
+        commit();
+        try (Stream<Book> books = bookRepository.streamBetweenYear(year1, year2)) {
+            for (Iterator<Book> iterator = books.iterator(); iterator.hasNext(); ) {
+                writeBook(iterator.next());
+            }
+        }
+    }
+
+    /**
+     * Runs the write in the open transaction, starting one if needed, and rolls
+     * back to the savepoint before it if it fails.
+     */
+    private void write(Runnable work) {
+        if (!dataSource.isInTransaction()) {
+            dataSource.begin(TransactionalDataSource.DEFAULT_ISOLATION);
+            writesInTransaction = 0;
+            firstLineInTransaction = lineNumber;
+        }
+        // kept until the commit, releasing it would cost another round trip
+        Savepoint savepoint = dataSource.setSavepoint();
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            dataSource.rollbackTo(savepoint);
+            throw e;
+        }
+        writesInTransaction++;
+    }
+
+    /**
+     * Commits the open transaction, if any. If the commit fails, all its writes are counted as failed.
+     */
+    private void commit() throws IOException {
+        if (!dataSource.isInTransaction()) {
+            return;
+        }
+        try {
+            dataSource.commit();
+            if (writesInTransaction > 0) {
+                transactionCount++;
+            }
+            lastAuthorUncommitted = false;
+        } catch (RuntimeException e) {
+            failedCount += writesInTransaction;
+            if (lastAuthorUncommitted) {
+                // the author is rolled back, so add-book must not default to it
+                lastAuthorId = Author.INVALID_ID;
+                lastAuthorUncommitted = false;
+            }
+            writeError("commit", "The writes of lines " + firstLineInTransaction + "-" + lineNumber
+                    + " were rolled back: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reports a write as done, then commits if the transaction holds enough writes.
+     */
+    private void writeDone(String command, int id) throws IOException {
+        if (jsonOutput) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("line", lineNumber);
+            fields.put("command", command);
+            fields.put("id", id);
+            writeJson(fields);
+        } else {
+            out.write(lineNumber + ": " + command + " " + id + " выполнено\n");
+        }
+        if (writesInTransaction >= transactionSize) {
+            commit();
+        }
+    }
+
+    private void writeNotFound(String command, int id) throws IOException {
+        if (jsonOutput) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("line", lineNumber);
+            fields.put("command", command);
+            fields.put("id", id);
+            fields.put("found", false);
+            writeJson(fields);
+        } else {
+            out.write(lineNumber + ": " + command + " " + id + " не найдено\n");
+        }
+    }
+
+    private void writeError(String command, String message) throws IOException {
+        if (jsonOutput) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("line", lineNumber);
+            fields.put("command", command);
+            fields.put("error", message);
+            writeJson(fields);
+        } else {
+            out.write(lineNumber + ": ошибка: " + message + "\n");
+        }
+    }
+
+    private void writeBook(Book book) throws IOException {
+        Map<String, Object> fields = BookRecord.fieldsOf(book);
+        if (jsonOutput) {
+            writeJson(fields);
+        } else {
+            Csv.format(out, fields.values().toArray());
+            out.write('\n');
+        }
+    }
+
+    private void writeAuthor(Author author) throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", author.id);
+        fields.put("name", author.name);
+        fields.put("birthYear", author.birthYear);
+        if (jsonOutput) {
+            writeJson(fields);
+        } else {
+            Csv.format(out, fields.values().toArray());
+            out.write('\n');
+        }
+    }
+
+    private void writeJson(Map<String, Object> fields) throws IOException {
+        FlatJson.format(out, fields);
+        out.write('\n');
+    }
+
+    private static void expectWords(List<String> words, int min, int max) {
+        if (words.size() < min || words.size() > max) {
+            throw new IllegalArgumentException("Wrong number of arguments for " + words.get(0));
+        }
+    }
+
+    private static int toInt(String word) {
+        try {
+            return Integer.parseInt(word);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + word);
+        }
+    }
+
+    /**
+     * Splits the line into words at spaces. A word in double quotes may contain
+     * spaces, and {@code \"} and {@code \\} stand for a quote and a backslash in it.
+     *
+     * @throws IllegalArgumentException If a quote is not closed.
+     */
+    private static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                StringBuilder word = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("The quote is not closed");
+                    }
+                    c = line.charAt(i++);
+                    if (c == '"') {
+                        break;
+                    }
+                    if (c == '\\' && i < line.length()) {
+                        c = line.charAt(i++);
+                    }
+                    word.append(c);
+                }
+                words.add(word.toString());
+            } else {
+                int start = i;
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                words.add(line.substring(start, i));
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,227 @@
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the statements slower than a threshold, with their bound parameters,
+ * row counts and elapsed time, to a log.
+ * <p>
+ * It listens to an {@link ObservedDataSource}. The statement thread only puts a
+ * slow statement into a bounded queue; a background thread formats and writes it.
+ * If the queue is full the entry is dropped and counted, so a slow log never
+ * slows the statements down.
+ * <p>
+ * If an explain source is set, the plan of every distinct slow statement is
+ * logged once, by running {@code EXPLAIN} with the same parameters on the
+ * background thread. The explain source must not be observed by this log.
+ */
+public class SlowQueryLog implements StatementListener, AutoCloseable {
+    /**
+     * How many distinct statements are remembered as explained.
+     */
+    private static final int MAX_EXPLAINED = 10_000;
+
+    private static final int MAX_PARAMETER_LENGTH = 100;
+
+    private final long thresholdNanos;
+    private final BlockingQueue<StatementExecution> queue;
+    private final Writer out;
+    private final Thread writer;
+    private final Set<String> explained = ConcurrentHashMap.newKeySet();
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile DataSource explainSource;
+    private volatile boolean closed;
+
+    /**
+     * Starts the background writer.
+     *
+     * @param thresholdMillis Statements running at least this long are logged.
+     * @param queueSize       How many entries may wait for the writer before new ones are dropped.
+     * @param out             The log, closed by {@link #close()}.
+     */
+    public SlowQueryLog(long thresholdMillis, int queueSize, Writer out) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.out = out;
+        this.writer = new Thread(this::writeEntries, "slow-query-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Enables logging the plans of slow statements, run on connections of the given source.
+     */
+    public void setExplainSource(DataSource explainSource) {
+        this.explainSource = explainSource;
+    }
+
+    @Override
+    public void executed(StatementExecution execution) {
+        if (execution.elapsedNanos >= thresholdNanos && !closed) {
+            if (!queue.offer(execution)) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries written.
+     */
+    public long getLoggedCount() {
+        return logged.get();
+    }
+
+    /**
+     * @return the number of slow statements not logged because the queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the entries already queued and closes the log.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void writeEntries() {
+        while (true) {
+            StatementExecution execution;
+            try {
+                // Polled rather than interrupted on close, an interrupt would close a channel-based log.
+                execution = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (execution == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                write(execution);
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Не удалось записать в журнал медленных запросов: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(StatementExecution execution) throws IOException {
+        StringBuilder entry = new StringBuilder();
+        entry.append(LocalDateTime.now()).append(' ')
+                .append(String.format(Locale.ROOT, "%.3f ms", execution.elapsedNanos / 1e6));
+        if (execution.rowsRead >= 0) {
+            entry.append(" rowsRead=").append(execution.rowsRead);
+        }
+        if (execution.updateCount >= 0) {
+            entry.append(" rowsChanged=").append(execution.updateCount);
+        }
+        if (execution.batchSize > 0) {
+            entry.append(" batch=").append(execution.batchSize);
+        }
+        entry.append(" | ").append(execution.sql);
+        if (!execution.parameters.isEmpty()) {
+            entry.append(" | params=");
+            appendParameters(entry, execution.parameters);
+        }
+        if (execution.error != null) {
+            entry.append(" | error=").append(execution.error);
+        }
+        entry.append('\n');
+        if (explainSource != null && isExplainable(execution)
+                && explained.size() < MAX_EXPLAINED && explained.add(execution.sql)) {
+            explain(entry, execution);
+        }
+        out.write(entry.toString());
+        logged.incrementAndGet();
+    }
+
+    /**
+     * Only queries and data changes have a plan, schema changes do not.
+     */
+    private static boolean isExplainable(StatementExecution execution) {
+        if (execution.sql == null || execution.error != null) {
+            return false;
+        }
+        String sql = execution.sql.trim().toUpperCase(Locale.ROOT);
+        return sql.startsWith("SELECT") || sql.startsWith("UPDATE")
+                || sql.startsWith("DELETE") || sql.startsWith("INSERT");
+    }
+
+    private static void appendParameters(StringBuilder entry, List<Object> parameters) {
+        entry.append('[');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                entry.append(", ");
+            }
+            Object value = parameters.get(i);
+            if (value instanceof String) {
+                String text = (String) value;
+                if (text.length() > MAX_PARAMETER_LENGTH) {
+                    text = text.substring(0, MAX_PARAMETER_LENGTH) + "...";
+                }
+                entry.append('\'').append(text).append('\'');
+            } else {
+                entry.append(value);
+            }
+        }
+        entry.append(']');
+    }
+
+    /**
+     * Appends the plan of the statement, one indented line per row of the {@code EXPLAIN} result.
+     */
+    private void explain(StringBuilder entry, StatementExecution execution) {
+        // prepared with the result set type, so the pool does not cache it in place of a hot statement
+        try (Connection connection = explainSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + execution.sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            for (int i = 0; i < execution.parameters.size(); i++) {
+                statement.setObject(i + 1, execution.parameters.get(i));
+            }
+            try (ResultSet cursor = statement.executeQuery()) {
+                ResultSetMetaData columns = cursor.getMetaData();
+                while (cursor.next()) {
+                    List<String> values = new ArrayList<>();
+                    for (int i = 1; i <= columns.getColumnCount(); i++) {
+                        values.add(columns.getColumnLabel(i) + "=" + cursor.getString(i));
+                    }
+                    entry.append("    plan: ").append(String.join(", ", values)).append('\n');
+                }
+            }
+        } catch (SQLException e) {
+            entry.append("    plan: not available: ").append(e.getMessage()).append('\n');
+        }
+    }
+}
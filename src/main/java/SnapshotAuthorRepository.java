@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Answers author lookups from a {@link BookSnapshot} instead of the database.
+ * The snapshot is loaded by {@link #initialize()} and kept up to date like
+ * in {@link SnapshotBookRepository}.
+ */
+public class SnapshotAuthorRepository extends ForwardingAuthorRepository {
+    private final TransactionalDataSource dataSource;
+    private final BookSnapshot snapshot;
+
+    /**
+     * @param dataSource The source the delegate writes through, to apply the writes on commit.
+     */
+    public SnapshotAuthorRepository(IAuthorRepository delegate, TransactionalDataSource dataSource,
+                                    BookSnapshot snapshot) {
+        super(delegate);
+        this.dataSource = dataSource;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Creates the table if needed and loads all authors into the snapshot.
+     */
+    @Override
+    public void initialize() {
+        delegate.initialize();
+        snapshot.loadAuthors(delegate);
+    }
+
+    /**
+     * Applies the authors written and deleted since the last load or refresh.
+     */
+    public void refresh() {
+        snapshot.refreshAuthors(delegate);
+    }
+
+    /**
+     * Loads all authors again.
+     */
+    public void reload() {
+        snapshot.loadAuthors(delegate);
+    }
+
+    @Override
+    public Collection<Author> getAll() {
+        return snapshot.getAllAuthors();
+    }
+
+    @Override
+    public Stream<Author> stream() {
+        return snapshot.getAllAuthors().stream();
+    }
+
+    @Override
+    public void forEach(Consumer<Author> action) {
+        snapshot.getAllAuthors().forEach(action);
+    }
+
+    @Override
+    public Optional<Author> getById(int n) {
+        return snapshot.getAuthor(n);
+    }
+
+    @Override
+    public Map<Integer, Author> getByIds(Collection<Integer> ids) {
+        return snapshot.getAuthors(ids);
+    }
+
+    @Override
+    public void save(Author author) {
+        delegate.save(author);
+        dataSource.afterCommit(() -> snapshot.putAuthor(author));
+    }
+
+    @Override
+    public void saveAll(Collection<Author> authors) {
+        delegate.saveAll(authors);
+        List<Author> saved = new ArrayList<>();
+        for (Author author : authors) {
+            if (author != null) {
+                saved.add(author);
+            }
+        }
+        dataSource.afterCommit(() -> saved.forEach(snapshot::putAuthor));
+    }
+
+    @Override
+    public void deleteById(int id) {
+        delegate.deleteById(id);
+        dataSource.afterCommit(() -> snapshot.removeAuthor(id));
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        delegate.deleteAllById(ids);
+        dataSource.afterCommit(() -> ids.forEach(snapshot::removeAuthor));
+    }
+
+    @Override
+    public void deleteAuthorsTable() {
+        delegate.deleteAuthorsTable();
+        dataSource.afterCommit(snapshot::clearAuthors);
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Answers book lookups from a {@link BookSnapshot} instead of the database.
+ * <p>
+ * {@link #initialize()} loads the snapshot, and the writes made through this
+ * repository are applied to it once they are committed, so a transaction does
+ * not see its own writes in the snapshot. The books others added, changed or deleted are read
+ * by {@link #refresh()} or a {@link SnapshotRefresher}, or pushed by a {@link ChangePoller} with
+ * {@link BookSnapshot#applyBookChange}. Paging, {@code searchBooks} and the
+ * statistics still query the database.
+ */
+public class SnapshotBookRepository extends ForwardingBookRepository {
+    private final TransactionalDataSource dataSource;
+    private final BookSnapshot snapshot;
+
+    /**
+     * @param dataSource The source the delegate writes through, to apply the writes on commit.
+     */
+    public SnapshotBookRepository(IBookRepository delegate, TransactionalDataSource dataSource,
+                                  BookSnapshot snapshot) {
+        super(delegate);
+        this.dataSource = dataSource;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Creates the tables if needed and loads all books into the snapshot.
+     */
+    @Override
+    public void initialize() {
+        delegate.initialize();
+        snapshot.loadBooks(delegate);
+    }
+
+    /**
+     * Applies the books written and deleted since the last load or refresh.
+     */
+    public void refresh() {
+        snapshot.refreshBooks(delegate);
+    }
+
+    /**
+     * Loads all books again.
+     */
+    public void reload() {
+        snapshot.loadBooks(delegate);
+    }
+
+    @Override
+    public Collection<Book> getAll() {
+        return snapshot.getAllBooks();
+    }
+
+    @Override
+    public Stream<Book> stream() {
+        return snapshot.getAllBooks().stream();
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        snapshot.getAllBooks().forEach(action);
+    }
+
+    @Override
+    public Optional<Book> getById(int id) {
+        return snapshot.getBook(id);
+    }
+
+    @Override
+    public Map<Integer, Book> getByIds(Collection<Integer> ids) {
+        return snapshot.getBooks(ids);
+    }
+
+    @Override
+    public void save(Book book) {
+        delegate.save(book);
+        dataSource.afterCommit(() -> snapshot.putBook(book));
+    }
+
+    @Override
+    public void saveAll(Collection<Book> books) {
+        delegate.saveAll(books);
+        List<Book> saved = new ArrayList<>(books);
+        dataSource.afterCommit(() -> saved.forEach(snapshot::putBook));
+    }
+
+    @Override
+    public void deleteById(int id) {
+        delegate.deleteById(id);
+        dataSource.afterCommit(() -> snapshot.removeBook(id));
+    }
+
+    @Override
+    public void deleteAllById(Collection<Integer> ids) {
+        delegate.deleteAllById(ids);
+        dataSource.afterCommit(() -> ids.forEach(snapshot::removeBook));
+    }
+
+    @Override
+    public void deleteBooksTable() {
+        delegate.deleteBooksTable();
+        dataSource.afterCommit(snapshot::clearBooks);
+    }
+
+    @Override
+    public Optional<Collection<Book>> searchBookByAuthorName(String text) {
+        List<Book> books = snapshot.getBooksByAuthorName(text);
+        return books.isEmpty() ? Optional.empty() : Optional.of(books);
+    }
+
+    @Override
+    public Optional<Collection<Book>> getBookBetweenYear(int year1, int year2) {
+        List<Book> books = snapshot.getBooksBetweenYear(year1, year2);
+        return books.isEmpty() ? Optional.empty() : Optional.of(books);
+    }
+
+    @Override
+    public Stream<Book> streamBetweenYear(int year1, int year2) {
+        return snapshot.getBooksBetweenYear(year1, year2).stream();
+    }
+
+    @Override
+    public Stream<Book> streamByAuthorId(int authorId) {
+        return snapshot.getBooksByAuthorId(authorId).stream();
+    }
+}
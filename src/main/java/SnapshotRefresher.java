@@ -0,0 +1,67 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes a {@link BookSnapshot} from the repositories on a background thread,
+ * so it sees the changes of other writers.
+ * <p>
+ * A refresh also rebuilds the string pool of the snapshot when it holds many
+ * strings no row uses any more, which the saves applied to the snapshot leave behind.
+ */
+public class SnapshotRefresher implements AutoCloseable {
+    private final BookSnapshot snapshot;
+    private final IBookRepository bookRepository;
+    private final IAuthorRepository authorRepository;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param bookRepository   The repository to read the changes of books from.
+     * @param authorRepository The repository to read the changes of authors from.
+     */
+    public SnapshotRefresher(BookSnapshot snapshot, IBookRepository bookRepository,
+                             IAuthorRepository authorRepository) {
+        this.snapshot = snapshot;
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+    }
+
+    /**
+     * Applies the changes since the last load or refresh, authors first.
+     */
+    public void refresh() {
+        snapshot.refreshAuthors(authorRepository);
+        snapshot.refreshBooks(bookRepository);
+    }
+
+    /**
+     * Refreshes every {@code periodMillis}, starting one period from now, until {@link #close()}.
+     */
+    public synchronized void start(long periodMillis) {
+        if (scheduler != null) {
+            throw new IllegalStateException("The refresher is already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                System.err.println("Не удалось обновить снимок: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background refreshes, a refresh already running is finished.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+}
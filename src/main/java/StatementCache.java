@@ -0,0 +1,204 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prepared statements of one physical connection, keyed by SQL text.
+ * <p>
+ * A statement taken from the cache is handed out wrapped, closing the wrapper
+ * only returns the statement to the cache, with its parameters and batch cleared.
+ * Settings the borrower changed, such as the fetch size or query timeout, are
+ * reset to those the statement was prepared with. A statement which fails to be
+ * cleared or reset is closed instead. The least recently
+ * used statement is closed when the cache is full.
+ */
+class StatementCache {
+    /**
+     * The setters of statement settings which {@link #release(CachedStatement)} resets.
+     */
+    private static final Set<String> SETTINGS = new HashSet<>(Arrays.asList(
+            "setFetchSize", "setMaxRows", "setLargeMaxRows", "setQueryTimeout", "setFetchDirection",
+            "setMaxFieldSize"));
+
+    private final Connection connection;
+    private final int maxSize;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    /**
+     * @param connection The physical connection the statements are prepared on.
+     * @param maxSize    The maximum number of statements kept open.
+     */
+    StatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a prepared statement for the SQL, reusing a cached one if it is not in use.
+     *
+     * @param owner             The connection the caller sees, returned by {@code getConnection()}.
+     * @param sql               The SQL text of the statement.
+     * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} or {@link Statement#NO_GENERATED_KEYS}.
+     */
+    synchronized PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached == null) {
+            PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+            try {
+                cached = new CachedStatement(statement);
+            } catch (SQLException | RuntimeException e) {
+                statement.close();
+                throw e;
+            }
+            statements.put(key, cached);
+            evictIfFull();
+        } else if (cached.inUse) {
+            // The same SQL is already open on this connection, so this one is not cached.
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        cached.inUse = true;
+        return cached.lend(owner);
+    }
+
+    private void evictIfFull() {
+        Iterator<Map.Entry<String, CachedStatement>> iterator = statements.entrySet().iterator();
+        while (statements.size() > maxSize && iterator.hasNext()) {
+            CachedStatement eldest = iterator.next().getValue();
+            iterator.remove();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                eldest.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * @return the number of statements currently cached.
+     */
+    synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every cached statement, for use when the physical connection is closed.
+     */
+    synchronized void close() {
+        List<CachedStatement> all = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement cached : all) {
+            cached.closeQuietly();
+        }
+    }
+
+    private synchronized void release(CachedStatement cached) {
+        cached.inUse = false;
+        if (cached.evicted) {
+            cached.closeQuietly();
+            return;
+        }
+        // a batch left by a failed executeBatch must not be sent by the next borrower
+        try {
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+            if (cached.settingsChanged) {
+                cached.resetSettings();
+            }
+        } catch (SQLException | RuntimeException e) {
+            statements.values().remove(cached);
+            cached.evicted = true;
+            cached.closeQuietly();
+        }
+    }
+
+    private class CachedStatement {
+        private final PreparedStatement statement;
+        private final int fetchSize;
+        private final int maxRows;
+        private final int queryTimeout;
+        private final int fetchDirection;
+        private final int maxFieldSize;
+        private boolean inUse;
+        private boolean evicted;
+        private boolean settingsChanged;
+
+        CachedStatement(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.queryTimeout = statement.getQueryTimeout();
+            this.fetchDirection = statement.getFetchDirection();
+            this.maxFieldSize = statement.getMaxFieldSize();
+        }
+
+        void resetSettings() throws SQLException {
+            // before the fetch size, which some drivers do not allow above the maximum rows
+            statement.setMaxRows(maxRows);
+            statement.setFetchSize(fetchSize);
+            statement.setQueryTimeout(queryTimeout);
+            statement.setFetchDirection(fetchDirection);
+            statement.setMaxFieldSize(maxFieldSize);
+            settingsChanged = false;
+        }
+
+        PreparedStatement lend(Connection owner) {
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                        private boolean returned;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            switch (method.getName()) {
+                                case "close":
+                                    if (!returned) {
+                                        returned = true;
+                                        release(CachedStatement.this);
+                                    }
+                                    return null;
+                                case "isClosed":
+                                    return returned || statement.isClosed();
+                                case "getConnection":
+                                    return owner;
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                default:
+                                    if (returned) {
+                                        throw new SQLException("Statement is closed");
+                                    }
+                                    if (SETTINGS.contains(method.getName())) {
+                                        settingsChanged = true;
+                                    }
+                                    try {
+                                        return method.invoke(statement, args);
+                                    } catch (InvocationTargetException e) {
+                                        throw e.getCause();
+                                    }
+                            }
+                        }
+                    });
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.List;
+
+/**
+ * One run of a statement, as reported to a {@link StatementListener}.
+ */
+public class StatementExecution {
+    /**
+     * The SQL text, or {@code null} for a batch of plain statements.
+     */
+    public final String sql;
+
+    /**
+     * The parameters bound by index, the first one at position 0. For a batch,
+     * the parameters of its last row.
+     */
+    public final List<Object> parameters;
+
+    /**
+     * The number of rows in the batch, 0 if the statement was not run as a batch.
+     */
+    public final int batchSize;
+
+    /**
+     * The time spent running the statement and, for queries, reading the result.
+     */
+    public final long elapsedNanos;
+
+    /**
+     * The number of rows changed, or -1 for queries.
+     */
+    public final long updateCount;
+
+    /**
+     * The number of rows read from the result, or -1 if the statement did not return rows.
+     */
+    public final long rowsRead;
+
+    /**
+     * The exception thrown by the statement, or {@code null} if it succeeded.
+     */
+    public final Throwable error;
+
+    public StatementExecution(String sql, List<Object> parameters, int batchSize, long elapsedNanos,
+                              long updateCount, long rowsRead, Throwable error) {
+        this.sql = sql;
+        this.parameters = parameters;
+        this.batchSize = batchSize;
+        this.elapsedNanos = elapsedNanos;
+        this.updateCount = updateCount;
+        this.rowsRead = rowsRead;
+        this.error = error;
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Is told about every statement run through an {@link ObservedDataSource}.
+ * <p>
+ * An update is reported when it completes, a query when its result is closed,
+ * so that the rows read are known. Listeners are called on the thread that ran
+ * the statement, so they must be quick.
+ */
+@FunctionalInterface
+public interface StatementListener {
+
+    void executed(StatementExecution execution);
+}
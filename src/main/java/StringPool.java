@@ -0,0 +1,42 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of strings: every distinct string is stored once
+ * and referred to by an {@code int} code.
+ * Strings are never removed, a pool is dropped as a whole instead.
+ */
+final class StringPool {
+    static final int NULL = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] strings = new String[16];
+
+    /**
+     * @return the code of the string, {@link #NULL} for {@code null}.
+     */
+    int encode(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = codes.size();
+            if (code == strings.length) {
+                strings = Arrays.copyOf(strings, code * 2);
+            }
+            strings[code] = value;
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    String decode(int code) {
+        return code == NULL ? null : strings[code];
+    }
+
+    int size() {
+        return codes.size();
+    }
+}
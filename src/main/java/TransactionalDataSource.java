@@ -0,0 +1,424 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * A {@link DataSource} which binds one connection to the current thread
+ * for the duration of a transaction.
+ * <p>
+ * Outside a transaction every {@link #getConnection()} borrows a connection
+ * from the underlying source. Inside {@link #inTransaction(Supplier)} it returns
+ * the transaction's connection, so repositories sharing this source take part
+ * in the same transaction without passing the connection around.
+ * <p>
+ * A transaction is either scoped by {@link #inTransaction(Supplier)} or
+ * opened by {@link #begin(int)} and ended by {@link #commit()} or {@link #rollback()}.
+ * <p>
+ * Changes made in memory along with a write, such as generated IDs, are undone
+ * by actions registered with {@link #afterRollback(Runnable)}. They run when the
+ * transaction is rolled back, and when it is rolled back to a savepoint set
+ * before they were registered.
+ */
+public class TransactionalDataSource implements DataSource {
+    /**
+     * Keeps the isolation level the connection already has.
+     */
+    public static final int DEFAULT_ISOLATION = -1;
+
+    private final DataSource dataSource;
+    private final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    public TransactionalDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the given source if it already is transactional, or wraps it otherwise.
+     */
+    public static TransactionalDataSource of(DataSource dataSource) {
+        return dataSource instanceof TransactionalDataSource
+                ? (TransactionalDataSource) dataSource
+                : new TransactionalDataSource(dataSource);
+    }
+
+    /**
+     * @return the connection of the current transaction, or a newly borrowed one.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        Transaction transaction = current.get();
+        if (transaction != null) {
+            return withoutClose(transaction.connection);
+        }
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The underlying data source defines the credentials");
+    }
+
+    /**
+     * @return true if the current thread runs inside a transaction.
+     */
+    public boolean isInTransaction() {
+        return current.get() != null;
+    }
+
+    public void inTransaction(Runnable work) {
+        inTransaction(DEFAULT_ISOLATION, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public <T> T inTransaction(Supplier<T> work) {
+        return inTransaction(DEFAULT_ISOLATION, work);
+    }
+
+    /**
+     * Runs the work in a transaction which is committed if the work completes
+     * and rolled back if it throws. If the thread already is in a transaction,
+     * the work joins it and the isolation level is not changed.
+     *
+     * @param isolationLevel One of the {@code Connection.TRANSACTION_*} levels or {@link #DEFAULT_ISOLATION}.
+     * @return the result of the work.
+     */
+    public <T> T inTransaction(int isolationLevel, Supplier<T> work) {
+        if (isInTransaction()) {
+            return work.get();
+        }
+        begin(isolationLevel);
+        T result;
+        try {
+            result = work.get();
+        } catch (RuntimeException | Error e) {
+            try {
+                rollback();
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+        commit();
+        return result;
+    }
+
+    /**
+     * Starts a transaction bound to the current thread, to be ended by
+     * {@link #commit()} or {@link #rollback()} on the same thread.
+     *
+     * @param isolationLevel One of the {@code Connection.TRANSACTION_*} levels or {@link #DEFAULT_ISOLATION}.
+     * @throws IllegalStateException If the thread already is in a transaction.
+     */
+    public void begin(int isolationLevel) {
+        if (isInTransaction()) {
+            throw new IllegalStateException("The thread already is in a transaction");
+        }
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            int previousIsolation = connection.getTransactionIsolation();
+            if (isolationLevel != DEFAULT_ISOLATION) {
+                connection.setTransactionIsolation(isolationLevel);
+            }
+            connection.setAutoCommit(false);
+            current.set(new Transaction(connection, previousIsolation));
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Commits the current transaction. If the commit fails, the transaction is rolled back.
+     */
+    public void commit() {
+        Transaction transaction = requireTransaction();
+        boolean committed = false;
+        try {
+            for (Runnable action : transaction.beforeCommit) {
+                action.run();
+            }
+            transaction.connection.commit();
+            committed = true;
+        } catch (SQLException e) {
+            RuntimeException failure = new RuntimeException(e);
+            rollbackQuietly(transaction.connection, failure);
+            throw failure;
+        } catch (RuntimeException | Error e) {
+            rollbackQuietly(transaction.connection, e);
+            throw e;
+        } finally {
+            end(transaction);
+            if (!committed) {
+                runAfterRollback(transaction, 0);
+            }
+        }
+        for (Runnable action : transaction.afterCommit) {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action in the current transaction just before it is committed.
+     * If the action throws, the transaction is rolled back.
+     *
+     * @throws IllegalStateException If the thread is not in a transaction.
+     */
+    public void beforeCommit(Runnable action) {
+        requireTransaction().beforeCommit.add(action);
+    }
+
+    /**
+     * Runs the action once the current transaction is committed, or right away
+     * outside a transaction. The action is dropped if the transaction is rolled back.
+     */
+    public void afterCommit(Runnable action) {
+        Transaction transaction = current.get();
+        if (transaction != null) {
+            transaction.afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action if the current transaction is rolled back, or if it is rolled
+     * back to a savepoint set before this call. Outside a transaction there is
+     * nothing to roll back and the action is dropped.
+     * <p>
+     * The actions run in the reverse order of their registration.
+     */
+    public void afterRollback(Runnable action) {
+        Transaction transaction = current.get();
+        if (transaction != null) {
+            transaction.afterRollback.add(action);
+        }
+    }
+
+    /**
+     * Returns the value bound to the key in the current transaction, created by the
+     * factory on first use. The value is forgotten when the transaction ends.
+     *
+     * @throws IllegalStateException If the thread is not in a transaction.
+     */
+    public <T> T getTransactionResource(Object key, Supplier<T> factory) {
+        Transaction transaction = requireTransaction();
+        @SuppressWarnings("unchecked")
+        T value = (T) transaction.resources.get(key);
+        if (value == null) {
+            value = factory.get();
+            transaction.resources.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Forgets the value bound to the key in the current transaction, if any.
+     */
+    public void removeTransactionResource(Object key) {
+        Transaction transaction = current.get();
+        if (transaction != null) {
+            transaction.resources.remove(key);
+        }
+    }
+
+    public void rollback() {
+        Transaction transaction = requireTransaction();
+        try {
+            transaction.connection.rollback();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            end(transaction);
+            runAfterRollback(transaction, 0);
+        }
+    }
+
+    /**
+     * Marks the current state of the transaction, so later changes can be undone
+     * by {@link #rollbackTo(Savepoint)} without ending the transaction.
+     */
+    public Savepoint setSavepoint() {
+        Transaction transaction = requireTransaction();
+        try {
+            Savepoint savepoint = transaction.connection.setSavepoint();
+            transaction.savepoints.put(savepoint, new int[]{transaction.beforeCommit.size(),
+                    transaction.afterCommit.size(), transaction.afterRollback.size()});
+            return savepoint;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Undoes the changes made after the savepoint. The actions registered after it are
+     * dropped, and its {@link #afterRollback(Runnable)} actions run.
+     */
+    public void rollbackTo(Savepoint savepoint) {
+        Transaction transaction = requireTransaction();
+        try {
+            transaction.connection.rollback(savepoint);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        int[] sizes = transaction.savepoints.get(savepoint);
+        if (sizes != null) {
+            transaction.beforeCommit.subList(sizes[0], transaction.beforeCommit.size()).clear();
+            transaction.afterCommit.subList(sizes[1], transaction.afterCommit.size()).clear();
+            runAfterRollback(transaction, sizes[2]);
+        }
+    }
+
+    public void releaseSavepoint(Savepoint savepoint) {
+        Transaction transaction = requireTransaction();
+        try {
+            transaction.connection.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        transaction.savepoints.remove(savepoint);
+    }
+
+    /**
+     * Runs and removes the rollback actions registered from the given index on, the latest first.
+     */
+    private static void runAfterRollback(Transaction transaction, int from) {
+        List<Runnable> actions = transaction.afterRollback;
+        while (actions.size() > from) {
+            actions.remove(actions.size() - 1).run();
+        }
+    }
+
+    private Transaction requireTransaction() {
+        Transaction transaction = current.get();
+        if (transaction == null) {
+            throw new IllegalStateException("The thread is not in a transaction");
+        }
+        return transaction;
+    }
+
+    /**
+     * Unbinds the transaction and gives its connection back in the state it was borrowed in.
+     */
+    private void end(Transaction transaction) {
+        current.remove();
+        try {
+            transaction.connection.setAutoCommit(true);
+            transaction.connection.setTransactionIsolation(transaction.previousIsolation);
+        } catch (SQLException ignored) {
+            // the pool discards or resets the connection
+        } finally {
+            closeQuietly(transaction.connection);
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection, Throwable cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Wraps the transaction's connection, so the repositories can close it as usual.
+     */
+    private static Connection withoutClose(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(TransactionalDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    private static class Transaction {
+        final Connection connection;
+        final int previousIsolation;
+        final List<Runnable> beforeCommit = new ArrayList<>();
+        final List<Runnable> afterCommit = new ArrayList<>();
+        final List<Runnable> afterRollback = new ArrayList<>();
+        final Map<Object, Object> resources = new HashMap<>();
+        /**
+         * The sizes of the action lists when each savepoint was set.
+         */
+        final Map<Savepoint, int[]> savepoints = new IdentityHashMap<>();
+
+        Transaction(Connection connection, int previousIsolation) {
+            this.connection = connection;
+            this.previousIsolation = previousIsolation;
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        return dataSource.unwrap(type);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) throws SQLException {
+        return type.isInstance(this) || dataSource.isWrapperFor(type);
+    }
+}
@@ -0,0 +1,205 @@
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects saves and deletes of books and authors and writes them in one
+ * transaction on {@link #commit()}.
+ * <p>
+ * The transaction starts when the unit of work is created and is bound to
+ * the creating thread, so repository reads on that thread see its state.
+ * Registered writes are kept in memory until commit, then flushed as batches:
+ * saved books with their authors, the remaining saved authors, deleted books,
+ * and finally deleted authors. If a write fails, for example a deleted ID does
+ * not exist or a deleted author still has books, nothing is committed.
+ * Closing a unit of work which was not committed
+ * rolls it back, so it is meant for a try-with-resources block:
+ * <pre>
+ * try (UnitOfWork work = new UnitOfWork(dataSource, books, authors)) {
+ *     work.registerSave(book);
+ *     work.commit();
+ * }
+ * </pre>
+ */
+public class UnitOfWork implements AutoCloseable {
+    private final TransactionalDataSource dataSource;
+    private final IBookRepository bookRepository;
+    private final IAuthorRepository authorRepository;
+
+    private final List<Book> savedBooks = new ArrayList<>();
+    private final List<Author> savedAuthors = new ArrayList<>();
+    private final List<Integer> deletedBookIds = new ArrayList<>();
+    private final List<Integer> deletedAuthorIds = new ArrayList<>();
+    private boolean active;
+
+    /**
+     * Starts a unit of work with the default isolation level of the connection.
+     */
+    public UnitOfWork(TransactionalDataSource dataSource, IBookRepository bookRepository,
+                      IAuthorRepository authorRepository) {
+        this(dataSource, bookRepository, authorRepository, TransactionalDataSource.DEFAULT_ISOLATION);
+    }
+
+    /**
+     * @param isolationLevel One of the {@code Connection.TRANSACTION_*} levels,
+     *                       or {@link TransactionalDataSource#DEFAULT_ISOLATION}.
+     * @see Connection#setTransactionIsolation(int)
+     */
+    public UnitOfWork(TransactionalDataSource dataSource, IBookRepository bookRepository,
+                      IAuthorRepository authorRepository, int isolationLevel) {
+        this.dataSource = dataSource;
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+        dataSource.begin(isolationLevel);
+        this.active = true;
+    }
+
+    /**
+     * Saves the book and its author on commit.
+     */
+    public void registerSave(Book book) {
+        requireActive();
+        savedBooks.add(book);
+    }
+
+    public void registerSave(Author author) {
+        requireActive();
+        savedAuthors.add(author);
+    }
+
+    public void registerBookDelete(int id) {
+        requireActive();
+        deletedBookIds.add(id);
+    }
+
+    public void registerAuthorDelete(int id) {
+        requireActive();
+        deletedAuthorIds.add(id);
+    }
+
+    /**
+     * @return the number of registered writes not flushed yet.
+     */
+    public int getPendingCount() {
+        return savedBooks.size() + savedAuthors.size() + deletedBookIds.size() + deletedAuthorIds.size();
+    }
+
+    /**
+     * Marks the current state: both the registered writes and the changes already
+     * made in the transaction can be undone up to here by {@link #rollbackTo(Mark)}.
+     */
+    public Mark mark() {
+        requireActive();
+        return new Mark(dataSource.setSavepoint(), savedBooks.size(), savedAuthors.size(),
+                deletedBookIds.size(), deletedAuthorIds.size());
+    }
+
+    /**
+     * Forgets the writes registered after the mark and rolls the transaction back to it.
+     * The unit of work stays active.
+     */
+    public void rollbackTo(Mark mark) {
+        requireActive();
+        dataSource.rollbackTo(mark.savepoint);
+        truncate(savedBooks, mark.savedBooks);
+        truncate(savedAuthors, mark.savedAuthors);
+        truncate(deletedBookIds, mark.deletedBooks);
+        truncate(deletedAuthorIds, mark.deletedAuthors);
+    }
+
+    /**
+     * Writes the registered changes in batches and commits the transaction.
+     * If any write fails, the whole transaction is rolled back.
+     */
+    public void commit() {
+        requireActive();
+        active = false;
+        try {
+            flush();
+        } catch (RuntimeException | Error e) {
+            try {
+                dataSource.rollback();
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+        dataSource.commit();
+    }
+
+    public void rollback() {
+        requireActive();
+        active = false;
+        dataSource.rollback();
+    }
+
+    /**
+     * Rolls back if the unit of work was neither committed nor rolled back.
+     */
+    @Override
+    public void close() {
+        if (active) {
+            rollback();
+        }
+    }
+
+    private void flush() {
+        if (!savedBooks.isEmpty()) {
+            bookRepository.saveAll(savedBooks);
+        }
+
+        Set<Author> savedWithBooks = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Book book : savedBooks) {
+            savedWithBooks.add(book.author);
+        }
+        List<Author> otherAuthors = new ArrayList<>();
+        for (Author author : savedAuthors) {
+            if (!savedWithBooks.contains(author)) {
+                otherAuthors.add(author);
+            }
+        }
+        if (!otherAuthors.isEmpty()) {
+            authorRepository.saveAll(otherAuthors);
+        }
+
+        if (!deletedBookIds.isEmpty()) {
+            bookRepository.deleteAllById(deletedBookIds);
+        }
+        if (!deletedAuthorIds.isEmpty()) {
+            authorRepository.deleteAllById(deletedAuthorIds);
+        }
+    }
+
+    private void requireActive() {
+        if (!active) {
+            throw new IllegalStateException("The unit of work is already committed or rolled back");
+        }
+    }
+
+    private static void truncate(List<?> list, int size) {
+        list.subList(size, list.size()).clear();
+    }
+
+    /**
+     * A point the unit of work can be rolled back to.
+     */
+    public static class Mark {
+        private final Savepoint savepoint;
+        private final int savedBooks;
+        private final int savedAuthors;
+        private final int deletedBooks;
+        private final int deletedAuthors;
+
+        private Mark(Savepoint savepoint, int savedBooks, int savedAuthors, int deletedBooks, int deletedAuthors) {
+            this.savepoint = savepoint;
+            this.savedBooks = savedBooks;
+            this.savedAuthors = savedAuthors;
+            this.deletedBooks = deletedBooks;
+            this.deletedAuthors = deletedAuthors;
+        }
+    }
+}
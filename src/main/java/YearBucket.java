@@ -0,0 +1,27 @@
+/**
+ * Aggregates over the books published in a range of years, one bar of a histogram.
+ */
+public class YearBucket {
+    /**
+     * The first year of the range, a multiple of the bucket width.
+     */
+    public final int fromYear;
+
+    /**
+     * The last year of the range, inclusive.
+     */
+    public final int toYear;
+
+    public final BookStats stats;
+
+    public YearBucket(int fromYear, int toYear, BookStats stats) {
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        this.stats = stats;
+    }
+
+    @Override
+    public String toString() {
+        return fromYear + "-" + toYear + ": " + stats;
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BookImporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestDatabase database;
+    private BookImporter importer;
+
+    @Before
+    public void setUp() {
+        database = new TestDatabase();
+        importer = new BookImporter(database.dataSource, database.bookRepository, database.authorRepository);
+        importer.setTransactionSize(2);
+        importer.setParallelism(1);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void aFailedImportResumesAfterTheLastCommittedChunk() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("books.jsonl");
+        write(file, "{\"title\": \"First\", \"publishYear\": \"1901\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Second\", \"publishYear\": \"1902\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Third\", \"publishYear\": \"1903\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Fourth\", \"publishYear\": \"not a year\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Fifth\", \"publishYear\": \"1905\", \"authorName\": \"Author\"}");
+
+        try {
+            importer.importFile(file);
+            throw new AssertionError("Imported a malformed record");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(Arrays.asList("First", "Second"), titles());
+
+        write(file, "{\"title\": \"First\", \"publishYear\": \"1901\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Second\", \"publishYear\": \"1902\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Third\", \"publishYear\": \"1903\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Fourth\", \"publishYear\": \"1904\", \"authorName\": \"Author\"}",
+                "{\"title\": \"Fifth\", \"publishYear\": \"1905\", \"authorName\": \"Author\"}");
+        BookImporter.Result result = importer.importFile(file);
+
+        assertEquals(2, result.skippedRecords);
+        assertEquals(3, result.records);
+        assertEquals(0, result.createdAuthors);
+        assertEquals(Arrays.asList("First", "Second", "Third", "Fourth", "Fifth"), titles());
+        assertEquals(1, database.authorRepository.getAll().size());
+    }
+
+    private List<String> titles() {
+        List<String> titles = new ArrayList<>();
+        for (Book book : database.bookRepository.getAll()) {
+            titles.add(book.title);
+        }
+        return titles;
+    }
+
+    private static void write(Path file, String... lines) throws IOException {
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
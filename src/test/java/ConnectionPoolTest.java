@@ -0,0 +1,91 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionPoolTest {
+    private TestDatabase database;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = new TestDatabase();
+        database.execute("CREATE TABLE numbers(n INT)");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void borrowingFromAnExhaustedPoolTimesOut() throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:", "sa", "", 1, 600000, 50, 5, 0, 64);
+             Connection borrowed = pool.getConnection()) {
+            try (Connection second = pool.getConnection()) {
+                throw new AssertionError("Borrowed a second connection from a pool of one: " + second);
+            } catch (SQLTimeoutException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Timed out"));
+            }
+            assertTrue(borrowed.isValid(1));
+        }
+    }
+
+    @Test
+    public void aCachedStatementComesBackWithoutTheSettingsOfItsLastBorrower() throws SQLException {
+        database.execute("INSERT INTO numbers VALUES (1), (2), (3), (4), (5)");
+        try (Connection connection = database.pool.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT n FROM numbers")) {
+                statement.setMaxRows(2);
+                statement.setFetchSize(1);
+                assertEquals(2, count(statement));
+            }
+            try (PreparedStatement statement = connection.prepareStatement("SELECT n FROM numbers")) {
+                assertEquals(0, statement.getMaxRows());
+                assertEquals(5, count(statement));
+            }
+        }
+    }
+
+    @Test
+    public void aCachedStatementComesBackWithoutTheBatchItsLastBorrowerLeft() throws SQLException {
+        try (Connection connection = database.pool.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO numbers VALUES (?)")) {
+                statement.setInt(1, 1);
+                statement.addBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO numbers VALUES (?)")) {
+                statement.setInt(1, 2);
+                statement.addBatch();
+                assertEquals(1, statement.executeBatch().length);
+            }
+            try (PreparedStatement statement = connection.prepareStatement("SELECT n FROM numbers")) {
+                assertEquals(1, count(statement));
+            }
+        }
+    }
+
+    @Test(expected = SQLException.class)
+    public void aClosedPoolLendsNoConnection() throws SQLException {
+        database.pool.close();
+
+        database.pool.getConnection();
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        int rows = 0;
+        try (ResultSet cursor = statement.executeQuery()) {
+            while (cursor.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,99 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JDBCBookRepositoryChangesTest {
+    private TestDatabase database;
+
+    @Before
+    public void setUp() {
+        database = new TestDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void savingABookLoadedBeforeAnotherWriterChangedItThrows() {
+        int id = database.saveBooks(1, 1).get(0).id;
+        Book first = database.bookRepository.getById(id).get();
+        Book second = database.bookRepository.getById(id).get();
+        first.title = "First";
+        database.bookRepository.save(first);
+
+        second.title = "Second";
+        try {
+            database.bookRepository.save(second);
+            throw new AssertionError("Saved a book over a newer version");
+        } catch (OptimisticLockException e) {
+            assertEquals("books", e.table);
+            assertEquals(id, e.id);
+        }
+
+        assertEquals("First", database.bookRepository.getById(id).get().title);
+    }
+
+    @Test(expected = OptimisticLockException.class)
+    public void savingABookDeletedByAnotherWriterThrows() {
+        int id = database.saveBooks(1, 1).get(0).id;
+        Book stale = database.bookRepository.getById(id).get();
+        database.bookRepository.deleteById(id);
+
+        stale.title = "Changed";
+        database.bookRepository.save(stale);
+    }
+
+    @Test
+    public void aDeletedBookIsReturnedAsATombstone() {
+        List<Book> books = database.saveBooks(2, 1);
+        long version = highestVersion(changesSince(0));
+
+        database.bookRepository.deleteById(books.get(0).id);
+
+        List<Change<Book>> changes = changesSince(version);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).isDeleted());
+        assertEquals(books.get(0).id, changes.get(0).id);
+        assertNull(changes.get(0).value);
+        assertTrue(changes.get(0).version > version);
+    }
+
+    @Test
+    public void aRolledBackWriteIsNotAChange() {
+        List<Book> books = database.saveBooks(2, 1);
+        long version = highestVersion(changesSince(0));
+
+        try {
+            database.dataSource.inTransaction(() -> {
+                database.bookRepository.deleteAllById(Collections.singletonList(books.get(0).id));
+                database.bookRepository.save(TestDatabase.book("Rolled back", 1950, books.get(1).author));
+                throw new IllegalStateException("Rolled back");
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        assertTrue(changesSince(version).isEmpty());
+        assertEquals(2, database.bookRepository.getAll().size());
+    }
+
+    private List<Change<Book>> changesSince(long version) {
+        try (Stream<Change<Book>> changes = database.bookRepository.changesSince(version)) {
+            return changes.collect(Collectors.toList());
+        }
+    }
+
+    private static long highestVersion(List<Change<Book>> changes) {
+        return changes.stream().mapToLong(change -> change.version).max().orElse(0);
+    }
+}
@@ -0,0 +1,140 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The year range and author searches, which once returned only the first row or skipped it.
+ */
+public class JDBCBookRepositoryRangeTest {
+    private static final int BOOKS_PER_YEAR = 3;
+
+    private TestDatabase database;
+    private List<Book> books;
+
+    @Before
+    public void setUp() {
+        database = new TestDatabase();
+        Author tolstoy = TestDatabase.author("Tolstoy", 1828);
+        Author pushkin = TestDatabase.author("Pushkin", 1799);
+        books = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            books.add(TestDatabase.book("Book " + i, 1900 + i / BOOKS_PER_YEAR, i % 2 == 0 ? tolstoy : pushkin));
+        }
+        database.bookRepository.saveAll(books);
+        database.clearStatements();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void getBookBetweenYearReturnsEveryBookOfTheRangeInOneStatement() {
+        Collection<Book> found = database.bookRepository.getBookBetweenYear(1905, 1909).get();
+
+        assertEquals(1, database.statements().size());
+        assertEquals(idsBetween(1905, 1909), ids(found));
+        for (Book book : found) {
+            assertTrue(book.author.name.equals("Tolstoy") || book.author.name.equals("Pushkin"));
+        }
+    }
+
+    @Test
+    public void getBookBetweenYearIsEmptyOutsideTheBooks() {
+        assertFalse(database.bookRepository.getBookBetweenYear(1800, 1899).isPresent());
+    }
+
+    @Test
+    public void streamBetweenYearReturnsTheSameBooks() {
+        List<Integer> streamed;
+        try (Stream<Book> stream = database.bookRepository.streamBetweenYear(1905, 1909)) {
+            streamed = stream.map(book -> book.id).collect(Collectors.toList());
+        }
+
+        assertEquals(1, database.statements().size());
+        assertEquals(idsBetween(1905, 1909), streamed);
+    }
+
+    @Test
+    public void getPageBetweenYearWalksTheRangeWithoutGapsOrRepeats() {
+        List<Integer> paged = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            Page<Book> page = database.bookRepository.getPageBetweenYear(1902, 1915, token, 4);
+            paged.addAll(ids(page.items));
+            token = page.nextPageToken;
+            pages++;
+        } while (token != null);
+
+        assertEquals(idsBetween(1902, 1915), paged);
+        assertEquals(pages, database.statements().size());
+    }
+
+    @Test
+    public void searchBookByAuthorNameReturnsTheFirstMatchingBook() {
+        Author chekhov = TestDatabase.author("Chekhov", 1860);
+        Book book = TestDatabase.book("The Seagull", 1896, chekhov);
+        database.bookRepository.save(book);
+        database.clearStatements();
+
+        Collection<Book> found = database.bookRepository.searchBookByAuthorName("Chekhov").get();
+
+        assertEquals(1, database.statements().size());
+        assertEquals(Arrays.asList(book.id), ids(found));
+    }
+
+    @Test
+    public void searchBookByAuthorNameReturnsEveryBookOfTheAuthor() {
+        Collection<Book> found = database.bookRepository.searchBookByAuthorName("olsto").get();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < books.size(); i += 2) {
+            expected.add(books.get(i).id);
+        }
+        assertEquals(expected, ids(found));
+    }
+
+    @Test
+    public void searchBookByAuthorNameMatchesWildcardsLiterally() {
+        Optional<Collection<Book>> found = database.bookRepository.searchBookByAuthorName("%");
+
+        assertFalse(found.isPresent());
+    }
+
+    @Test
+    public void getPageBetweenYearHasNoNextPageAfterTheLastBook() {
+        Page<Book> page = database.bookRepository.getPageBetweenYear(1919, 1919, null, BOOKS_PER_YEAR);
+
+        assertEquals(BOOKS_PER_YEAR, page.items.size());
+        assertNull(page.nextPageToken);
+    }
+
+    /**
+     * @return the IDs of the saved books published in the years, in publish year and ID order.
+     */
+    private List<Integer> idsBetween(int year1, int year2) {
+        return books.stream()
+                .filter(book -> book.publishYear >= year1 && book.publishYear <= year2)
+                .map(book -> book.id)
+                .collect(Collectors.toList());
+    }
+
+    private static List<Integer> ids(Collection<Book> books) {
+        return books.stream().map(book -> book.id).collect(Collectors.toList());
+    }
+}
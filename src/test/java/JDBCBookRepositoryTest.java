@@ -0,0 +1,126 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JDBCBookRepositoryTest {
+    private TestDatabase database;
+
+    @Before
+    public void setUp() {
+        database = new TestDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void getAllLoadsBooksWithTheirAuthorsInOneStatement() {
+        database.saveBooks(50, 5);
+        database.clearStatements();
+
+        Collection<Book> books = database.bookRepository.getAll();
+
+        assertEquals(1, database.statements().size());
+        assertEquals(50, books.size());
+        Map<Integer, Author> authorsById = new HashMap<>();
+        for (Book book : books) {
+            Author author = authorsById.computeIfAbsent(book.author.id, id -> book.author);
+            assertSame("one instance per author", author, book.author);
+            assertTrue(book.author.name.startsWith("Author "));
+        }
+        assertEquals(5, authorsById.size());
+    }
+
+    @Test
+    public void getAllReturnsBooksWithoutAuthor() throws SQLException {
+        database.saveBooks(1, 1);
+        database.execute("UPDATE books SET author_id = NULL");
+
+        Collection<Book> books = database.bookRepository.getAll();
+
+        assertEquals(1, books.size());
+        assertNull(books.iterator().next().author);
+    }
+
+    @Test
+    public void getByIdsLoadsBooksWithTheirAuthorsInOneStatement() {
+        List<Book> saved = database.saveBooks(50, 5);
+        List<Integer> ids = new ArrayList<>();
+        for (Book book : saved.subList(10, 40)) {
+            ids.add(book.id);
+        }
+        ids.add(1_000_000);
+        database.clearStatements();
+
+        Map<Integer, Book> books = database.bookRepository.getByIds(ids);
+
+        assertEquals(1, database.statements().size());
+        assertEquals(30, books.size());
+        assertFalse(books.containsKey(1_000_000));
+        for (Book book : saved.subList(10, 40)) {
+            Book loaded = books.get(book.id);
+            assertEquals(book.title, loaded.title);
+            assertEquals(book.author.id, loaded.author.id);
+            assertEquals(book.author.name, loaded.author.name);
+        }
+    }
+
+    @Test
+    public void getByIdLoadsTheBookWithItsAuthorInOneStatement() {
+        Book saved = database.saveBooks(3, 1).get(1);
+        database.clearStatements();
+
+        Book book = database.bookRepository.getById(saved.id).get();
+
+        assertEquals(1, database.statements().size());
+        assertEquals(saved.title, book.title);
+        assertEquals("Author 0", book.author.name);
+    }
+
+    @Test
+    public void saveAllRunsAsManyStatementsForFiftyBooksAsForThree() {
+        database.saveBooks(3, 3);
+        int fewBooks = database.statements().size();
+        database.clearStatements();
+
+        database.saveBooks(50, 50);
+
+        assertEquals(fewBooks, database.statements().size());
+    }
+
+    @Test
+    public void saveAllDoesNotInsertAnAuthorSharedByBooksTwice() {
+        Author author = TestDatabase.author("Shared", 1900);
+        database.bookRepository.saveAll(Arrays.asList(
+                TestDatabase.book("First", 1901, author),
+                TestDatabase.book("Second", 1902, author)));
+
+        assertEquals(1, database.authorRepository.getAll().size());
+        for (Book book : database.bookRepository.getAll()) {
+            assertEquals(author.id, book.author.id);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void searchBooksRejectsALimitOfZero() {
+        database.saveBooks(3, 1);
+
+        database.bookRepository.searchBooks("Book", 0);
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Routes between two in-memory databases which hold different titles for book 1,
+ * so every read shows where it went.
+ */
+public class ReplicaRoutingDataSourceTest {
+    private static final long STICKINESS_MILLIS = 300;
+
+    private TestDatabase primary;
+    private TestDatabase replica;
+    private ReplicaRoutingDataSource routing;
+    private IBookRepository bookRepository;
+
+    @Before
+    public void setUp() {
+        primary = new TestDatabase();
+        replica = new TestDatabase();
+        primary.bookRepository.save(TestDatabase.book("On the primary", 1900, TestDatabase.author("A", 1850)));
+        replica.bookRepository.save(TestDatabase.book("On the replica", 1900, TestDatabase.author("A", 1850)));
+
+        routing = new ReplicaRoutingDataSource(primary.pool, Collections.singletonList(replica.pool),
+                ReplicaRoutingDataSource.Balance.ROUND_ROBIN, STICKINESS_MILLIS, 0, 5);
+        TransactionalDataSource dataSource = new TransactionalDataSource(routing);
+        IAuthorRepository authorRepository = new ReplicaRoutingAuthorRepository(
+                new JdbcAuthorRepository(dataSource), routing);
+        bookRepository = new ReplicaRoutingBookRepository(
+                new JDBCBookRepository(dataSource, authorRepository), routing);
+    }
+
+    @After
+    public void tearDown() {
+        routing.close(); // closes the replica pool too
+        primary.close();
+    }
+
+    @Test
+    public void readsGoToTheReplica() {
+        assertEquals("On the replica", titleOfFirstBook());
+        assertEquals(1, routing.getReplicaReads());
+    }
+
+    @Test
+    public void readsRightAfterAWriteGoToThePrimaryUntilTheStickinessPassed() throws InterruptedException {
+        bookRepository.save(TestDatabase.book("Written", 1901, TestDatabase.author("B", 1860)));
+
+        assertEquals("On the primary", titleOfFirstBook());
+
+        Thread.sleep(STICKINESS_MILLIS + 50);
+        assertEquals("On the replica", titleOfFirstBook());
+    }
+
+    @Test
+    public void queriesRunByExecuteAreNotWrites() throws SQLException {
+        try (Connection connection = routing.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("SELECT COUNT(*) FROM books");
+        }
+
+        assertEquals("On the replica", titleOfFirstBook());
+    }
+
+    @Test
+    public void updatesRunByExecuteAreWrites() throws SQLException {
+        try (Connection connection = routing.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE books SET pages_count = pages_count + 1");
+        }
+
+        assertEquals("On the primary", titleOfFirstBook());
+    }
+
+    private String titleOfFirstBook() {
+        return bookRepository.getById(1).get().title;
+    }
+}
@@ -0,0 +1,90 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScriptRunnerTest {
+    private TestDatabase database;
+    private ScriptRunner runner;
+    private StringWriter out;
+
+    @Before
+    public void setUp() {
+        database = new TestDatabase();
+        runner = new ScriptRunner(database.dataSource, database.bookRepository, database.authorRepository);
+        out = new StringWriter();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void deletingAnAuthorWithBooksIsReportedAsFailed() {
+        long failed = run("add-author Tolstoy 1828\n" +
+                "add-book \"War and Peace\" 1869 1225\n" +
+                "delete-author 1\n" +
+                "get-author 1\n");
+
+        assertEquals(1, failed);
+        String[] lines = out.toString().split("\n");
+        assertTrue(lines[2], lines[2].startsWith("3: ошибка: "));
+        assertFalse(out.toString().contains("delete-author 1 выполнено"));
+        assertTrue(database.authorRepository.getById(1).isPresent());
+        assertEquals(1, database.bookRepository.getAll().size());
+    }
+
+    @Test
+    public void deletingAMissingBookIsReportedAsFailed() {
+        long failed = run("delete-book 42\n");
+
+        assertEquals(1, failed);
+        assertTrue(out.toString(), out.toString().startsWith("1: ошибка: "));
+    }
+
+    @Test
+    public void addBookDoesNotDefaultToAnAuthorWhoseCommitFailed() {
+        runner = new ScriptRunner(database.dataSource, database.bookRepository,
+                new CommitFailingAuthorRepository(database.authorRepository, database.dataSource));
+
+        long failed = run("add-author \"Rolled back\" 1900\n" +
+                "get-author 1\n" +
+                "add-book Orphan 1950 100\n");
+
+        assertEquals(2, failed);
+        assertTrue(out.toString(), out.toString().contains("3: ошибка: No author ID is given"));
+        assertTrue(database.bookRepository.getAll().isEmpty());
+    }
+
+    private long run(String script) {
+        return runner.run(new BufferedReader(new StringReader(script)), out);
+    }
+
+    /**
+     * Saves authors, then fails the commit of the transaction which saved them.
+     */
+    private static class CommitFailingAuthorRepository extends ForwardingAuthorRepository {
+        private final TransactionalDataSource dataSource;
+
+        CommitFailingAuthorRepository(IAuthorRepository delegate, TransactionalDataSource dataSource) {
+            super(delegate);
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public void save(Author author) {
+            super.save(author);
+            dataSource.beforeCommit(() -> {
+                throw new IllegalStateException("The commit is refused");
+            });
+        }
+    }
+}
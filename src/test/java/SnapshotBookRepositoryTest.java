@@ -0,0 +1,77 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotBookRepositoryTest {
+    private TestDatabase database;
+    private BookSnapshot snapshot;
+    private SnapshotBookRepository repository;
+
+    @Before
+    public void setUp() {
+        database = new TestDatabase();
+        database.saveBooks(3, 1);
+        snapshot = new BookSnapshot();
+        repository = new SnapshotBookRepository(database.bookRepository, database.dataSource, snapshot);
+        repository.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void aSaveRolledBackIsNotApplied() {
+        Book book = TestDatabase.book("Rolled back", 1950, TestDatabase.author("Nobody", 1900));
+
+        try {
+            database.dataSource.inTransaction(() -> {
+                repository.save(book);
+                throw new IllegalStateException("Rolled back");
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(3, snapshot.getBookCount());
+        assertEquals(3, repository.getAll().size());
+    }
+
+    @Test
+    public void aFailingDeleteRemovesNoBook() {
+        int id = repository.getAll().iterator().next().id;
+
+        try {
+            repository.deleteAllById(Arrays.asList(id, 42));
+            throw new AssertionError("Deleted a missing book");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertTrue(repository.getById(id).isPresent());
+        assertEquals(3, snapshot.getBookCount());
+    }
+
+    @Test
+    public void theWritesOfOthersAreSeenOnlyAfterARefresh() {
+        int deleted = repository.getAll().iterator().next().id;
+        database.bookRepository.deleteById(deleted);
+        database.bookRepository.save(TestDatabase.book("Added", 1950, TestDatabase.author("Other", 1900)));
+
+        assertTrue(repository.getById(deleted).isPresent());
+
+        try (SnapshotRefresher refresher = new SnapshotRefresher(snapshot, database.bookRepository,
+                database.authorRepository)) {
+            refresher.refresh();
+        }
+
+        assertFalse(repository.getById(deleted).isPresent());
+        assertEquals(3, repository.getAll().size());
+        assertTrue(repository.getAll().stream().anyMatch(book -> book.title.equals("Added")));
+    }
+}
@@ -0,0 +1,100 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fresh in-memory H2 database in MySQL mode with the repositories on top.
+ * Every statement run by the repositories is recorded, so tests can count them.
+ */
+public class TestDatabase implements AutoCloseable {
+    public final ConnectionPool pool;
+    public final TransactionalDataSource dataSource;
+    public final JdbcAuthorRepository authorRepository;
+    public final JDBCBookRepository bookRepository;
+
+    private final List<StatementExecution> executions = new ArrayList<>();
+
+    public TestDatabase() {
+        String url = "jdbc:h2:mem:test" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        this.pool = new ConnectionPool(url, "sa", "", 4, 600000, 30000, 5, 0, 64);
+        ObservedDataSource observedDataSource = new ObservedDataSource(pool);
+        observedDataSource.addListener(execution -> {
+            synchronized (executions) {
+                executions.add(execution);
+            }
+        });
+        this.dataSource = new TransactionalDataSource(observedDataSource);
+        this.authorRepository = new JdbcAuthorRepository(dataSource);
+        this.bookRepository = new JDBCBookRepository(dataSource, authorRepository);
+        bookRepository.initialize();
+        clearStatements();
+    }
+
+    /**
+     * @return the SQL of the statements run since the last {@link #clearStatements()}.
+     */
+    public List<String> statements() {
+        List<String> sql = new ArrayList<>();
+        synchronized (executions) {
+            for (StatementExecution execution : executions) {
+                sql.add(execution.sql);
+            }
+        }
+        return sql;
+    }
+
+    public void clearStatements() {
+        synchronized (executions) {
+            executions.clear();
+        }
+    }
+
+    /**
+     * Runs the SQL directly on the pool, bypassing the repositories and the recording.
+     */
+    public void execute(String sql) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    public static Author author(String name, int birthYear) {
+        Author author = new Author();
+        author.name = name;
+        author.birthYear = birthYear;
+        return author;
+    }
+
+    public static Book book(String title, int publishYear, Author author) {
+        Book book = new Book();
+        book.title = title;
+        book.publishYear = publishYear;
+        book.pagesCount = 100;
+        book.author = author;
+        return book;
+    }
+
+    /**
+     * Saves {@code bookCount} books spread over {@code authorCount} new authors, a year apart from 1900 on.
+     */
+    public List<Book> saveBooks(int bookCount, int authorCount) {
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < authorCount; i++) {
+            authors.add(author("Author " + i, 1850 + i));
+        }
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < bookCount; i++) {
+            books.add(book("Book " + i, 1900 + i, authors.get(i % authorCount)));
+        }
+        bookRepository.saveAll(books);
+        return books;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
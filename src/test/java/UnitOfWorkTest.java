@@ -0,0 +1,81 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UnitOfWorkTest {
+    private TestDatabase database;
+
+    @Before
+    public void setUp() {
+        database = new TestDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void aFailingDeleteRollsBackTheSavesAndTheirGeneratedIds() {
+        Book book = TestDatabase.book("Rolled back", 1950, TestDatabase.author("Nobody", 1900));
+
+        try (UnitOfWork work = newUnitOfWork()) {
+            work.registerSave(book);
+            work.registerBookDelete(42);
+            work.commit();
+            throw new AssertionError("Committed the delete of a missing book");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("42"));
+        }
+
+        assertEquals(Book.INVALID_ID, book.id);
+        assertEquals(Author.INVALID_ID, book.author.id);
+        assertTrue(database.bookRepository.getAll().isEmpty());
+        assertTrue(database.authorRepository.getAll().isEmpty());
+        assertFalse(database.dataSource.isInTransaction());
+    }
+
+    @Test
+    public void rollingBackToAMarkUndoesOnlyTheWritesAfterIt() {
+        Book kept = TestDatabase.book("Kept", 1950, TestDatabase.author("First", 1900));
+        Book registered = TestDatabase.book("Registered", 1951, TestDatabase.author("Second", 1901));
+        Book written = TestDatabase.book("Written", 1952, TestDatabase.author("Third", 1902));
+
+        try (UnitOfWork work = newUnitOfWork()) {
+            work.registerSave(kept);
+            UnitOfWork.Mark mark = work.mark();
+            work.registerSave(registered);
+            database.bookRepository.save(written);
+            work.rollbackTo(mark);
+
+            assertEquals(1, work.getPendingCount());
+            assertEquals(Book.INVALID_ID, written.id);
+            work.commit();
+        }
+
+        Collection<Book> books = database.bookRepository.getAll();
+        assertEquals(1, books.size());
+        assertEquals("Kept", books.iterator().next().title);
+        assertEquals(Book.INVALID_ID, registered.id);
+    }
+
+    @Test
+    public void closingWithoutCommitWritesNothing() {
+        try (UnitOfWork work = newUnitOfWork()) {
+            work.registerSave(TestDatabase.book("Abandoned", 1950, TestDatabase.author("Nobody", 1900)));
+        }
+
+        assertTrue(database.bookRepository.getAll().isEmpty());
+        assertFalse(database.dataSource.isInTransaction());
+    }
+
+    private UnitOfWork newUnitOfWork() {
+        return new UnitOfWork(database.dataSource, database.bookRepository, database.authorRepository);
+    }
+}